@@ -0,0 +1,186 @@
+/**
+ * @author Johanne
+ */
+package archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import logic.BoardLayout;
+import logic.Ludo;
+import logic.LudoDriver;
+import logic.Replay;
+import sim.DiceStream;
+
+/**
+ * Command line access to game archives.
+ * Usage: ArchiveTool build FILE GAMES [SEED]   plays GAMES simulated games into a new archive
+ *        ArchiveTool query FILE WINNER MAXTHROWS  counts games won by WINNER in at most MAXTHROWS
+ *        ArchiveTool replay FILE INDEX OUT        writes game INDEX as a replay file for the GUI
+ *        ArchiveTool records GAMES [SEED]         checks that game records play back exactly
+ */
+public class ArchiveTool {
+	static final int BLOCK_SIZE = 4096;
+	static final int MAX_THROWS = 100000;
+	static final String[] NAMES = {"Red", "Blue", "Yellow", "Green"};
+
+	public static void main(String[] args) throws IOException {
+		if (args.length >= 3 && args[0].equals("build")) {
+			build(Paths.get(args[1]), Integer.parseInt(args[2]), args.length > 3 ? Long.parseLong(args[3]) : 1);
+		} else if (args.length == 4 && args[0].equals("query")) {
+			try (GameArchive archive = new GameArchive(Paths.get(args[1]))) {
+				long start = System.nanoTime();
+				long matches = archive.query(1 << Integer.parseInt(args[2]), 0, Integer.parseInt(args[3]), null);
+				System.out.printf("%d of %d games match, %d of %d blocks scanned, %.1f ms%n", matches,
+						archive.games(), archive.getBlocksScanned(), archive.blocks(),
+						(System.nanoTime()-start) / 1e6);
+			}
+		} else if (args.length == 4 && args[0].equals("replay")) {
+			exportReplay(Paths.get(args[1]), Long.parseLong(args[2]), Paths.get(args[3]));
+		} else if (args.length >= 2 && args[0].equals("records")) {
+			checkRecords(Integer.parseInt(args[1]), args.length > 2 ? Long.parseLong(args[2]) : 1);
+		} else {
+			System.out.println("Usage: ArchiveTool build FILE GAMES [SEED] | query FILE WINNER MAXTHROWS"
+					+ " | replay FILE INDEX OUT | records GAMES [SEED]");
+		}
+	}
+
+	/**
+	 * Plays simulated games with random choices and archives them.
+	 * @param file The archive to create
+	 * @param games Number of games to play
+	 * @param seed Seed for the DiceStream and the choices
+	 * @throws IOException if the archive cannot be written
+	 */
+	static void build(Path file, int games, long seed) throws IOException {
+		byte[] dice = new byte[1024];
+		byte[] moves = new byte[1024];
+		try (ArchiveWriter writer = new ArchiveWriter(file, BLOCK_SIZE)) {
+			for (int g=0; g<games; g++) {
+				LudoDriver driver = new LudoDriver(new Ludo("Red", "Blue", "Yellow", "Green"));
+				int n = 0;
+				while (driver.getGame().getWinner() == -1 && n < MAX_THROWS) {
+					if (n == dice.length) {
+						dice = Arrays.copyOf(dice, n*2);
+						moves = Arrays.copyOf(moves, n*2);
+					}
+					dice[n] = (byte) DiceStream.roll(seed, g, n);
+					moves[n] = -1;
+					int movable = driver.roll(dice[n]);
+					if (movable != 0) {
+						moves[n] = (byte) LudoDriver.pick(movable, DiceStream.roll(~seed, g, n));
+						driver.move(moves[n]);
+					}
+					n++;
+				}
+				writer.append(driver.getGame().getWinner(), driver.getGame().noOfPlayers(), dice, moves, n);
+			}
+		}
+	}
+
+	/**
+	 * Writes one archived game as a replay file, with a player for each of the game's seats.
+	 * @param file The archive
+	 * @param index The game's index in the archive
+	 * @param out The replay file to create
+	 * @throws IOException if the archive cannot be read or the replay written
+	 */
+	static void exportReplay(Path file, long index, Path out) throws IOException {
+		int[][] turns = new int[2][];	// Dice and pieces of the game, once found
+		int[] seats = new int[1];
+		try (GameArchive archive = new GameArchive(file)) {
+			archive.query(GameArchive.ANY_WINNER, 0, Integer.MAX_VALUE, game -> {
+				if (game.index() == index) {
+					seats[0] = game.seats();
+					turns[0] = new int[game.length()];
+					turns[1] = new int[game.length()];
+					for (int n=0; n<game.length(); n++) {
+						turns[0][n] = game.dice(n);
+						turns[1][n] = game.move(n);
+					}
+				}
+			});
+		}
+		if (turns[0] == null) {
+			System.out.println("No game "+index+" in "+file);
+			return;
+		}
+		Replay.save(out, Arrays.copyOf(NAMES, seats[0]), turns[0], turns[1], turns[0].length);
+		System.out.println("Wrote "+turns[0].length+" turns to "+out);
+	}
+
+	/**
+	 * Records games of two to four players through RecordWriter and plays the records back
+	 * with RecordReader, checking that every game ends in the same state. Now and then a player
+	 * makes a move that Ludo refuses, a piece going past the goal, or gives up the turn with
+	 * passTurn(), also during the attempts to roll 6.
+	 * @param games Number of games to play
+	 * @param seed Seed for the DiceStream and the choices
+	 * @throws IOException if a record cannot be read
+	 */
+	static void checkRecords(int games, long seed) throws IOException {
+		long refused = 0;
+		long givenUp = 0;
+		long bytes = 0;
+		int diverged = 0;
+		for (int g=0; g<games; g++) {
+			Ludo ludo = new Ludo(BoardLayout.STANDARD, Arrays.copyOf(NAMES, 2 + g%3));
+			LudoDriver driver = new LudoDriver(ludo);
+			ByteArrayOutputStream record = new ByteArrayOutputStream();
+			RecordWriter writer = new RecordWriter(ludo, record);
+			SplittableRandom random = new SplittableRandom(seed ^ g*0x9E3779B97F4A7C15L);
+			for (int n=0; n<MAX_THROWS && ludo.getWinner() == -1; n++) {
+				int player = ludo.getCurrentPlayer();
+				int movable = driver.roll(DiceStream.roll(seed, g, n));
+				if (ludo.getCurrentPlayer() != player) {
+					continue;		// The throw ended the turn
+				}
+				int choice = random.nextInt(100);
+				if (choice < 4) {
+					int pos = ludo.getLocalPosition(player, random.nextInt(4));
+					ludo.movePiece(player, pos, ludo.getLayout().goalLocal() + 1 + random.nextInt(6));
+					refused++;
+				} else if (choice < 6) {
+					ludo.passTurn();
+					givenUp++;
+				} else if (movable != 0) {
+					driver.move(LudoDriver.pick(movable, random.nextInt(4)));
+				}
+			}
+			writer.close();
+			bytes += record.size();
+			try (RecordReader reader = new RecordReader(new ByteArrayInputStream(record.toByteArray()))) {
+				Ludo copy = reader.newGame();
+				while (reader.next(copy)) {
+				}
+				if (!sameState(ludo, copy)) {
+					if (diverged++ < 5) {
+						System.out.println("Game "+g+" plays back differently");
+					}
+				}
+			}
+		}
+		System.out.printf("%d of %d games play back differently; %d refused moves, %d turns given up,"
+				+ " %.1f bytes per game%n", diverged, games, refused, givenUp, (double) bytes / games);
+	}
+
+	/**
+	 * Gets whether two games stand the same: pieces, turn, attempt, extra throw and winner.
+	 */
+	static boolean sameState(Ludo a, Ludo b) {
+		for (int pl=0; pl<a.getLayout().players(); pl++) {
+			for (int pi=0; pi<4; pi++) {
+				if (a.getLocalPosition(pl, pi) != b.getLocalPosition(pl, pi)) {
+					return false;
+				}
+			}
+		}
+		return a.getCurrentPlayer() == b.getCurrentPlayer() && a.getAttempt() == b.getAttempt()
+				&& a.getExtraThrow() == b.getExtraThrow() && a.getWinner() == b.getWinner();
+	}
+}
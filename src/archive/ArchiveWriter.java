@@ -0,0 +1,172 @@
+/**
+ * @author Johanne
+ */
+package archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes finished games to a columnar archive file, read back by GameArchive.
+ * Games are collected into blocks; each block stores one column at a time (winners, seats,
+ * where each game's streams start, dice streams, move streams), and the directory at the end
+ * of the file keeps the block statistics that let queries skip whole blocks.
+ */
+public class ArchiveWriter implements Closeable {
+	static final int MAGIC = 0x4C554441;	// "LUDA"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 32;	// Magic, version, block size, block count, game count, directory
+	static final int ENTRY_SIZE = 32;	// Directory entry: offset, games, min/max length, winners, throws
+	static final int NO_WINNER = 31;	// Bit used in winner masks for games without a winner
+
+	final FileChannel channel;
+	final int blockSize;	// Games per block
+	long offset = HEADER_SIZE;	// Where the next block is written
+
+	// === THE BLOCK BEING FILLED ================================================================== //
+	final byte[] winner;
+	final byte[] seats;
+	final int[] length;		// Throws in each game
+	byte[] dice;			// Dice streams of all games in the block, back to back
+	byte[] moves;			// Chosen piece for each throw, -1 when nothing was moved
+	int games;				// Games in the current block
+	int throwsInBlock;		// Entries used in dice[] and moves[]
+
+	ByteBuffer directory = ByteBuffer.allocate(ENTRY_SIZE*64).order(ByteOrder.LITTLE_ENDIAN);
+	int blocks;
+	long totalGames;
+
+	/**
+	 * Creates a new archive file, replacing any existing file.
+	 * @param file The archive file
+	 * @param blockSize Games per block (at least 1); a few thousand suits most queries
+	 * @throws IOException if the file cannot be created
+	 */
+	public ArchiveWriter(Path file, int blockSize) throws IOException {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be positive: "+blockSize);
+		}
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		this.blockSize = blockSize;
+		winner = new byte[blockSize];
+		seats = new byte[blockSize];
+		length = new int[blockSize];
+		dice = new byte[blockSize*64];
+		moves = new byte[blockSize*64];
+	}
+
+	/**
+	 * Adds a finished game to the archive.
+	 * @param winner The winner, or -1 if the game has none
+	 * @param seats Number of players in the game
+	 * @param dice The dice of each throw (1-6)
+	 * @param moves The piece moved after each throw, or -1 if none
+	 * @param throwsMade Number of throws, i.e. how much of dice[] and moves[] to store
+	 * @throws IOException if a full block cannot be written
+	 */
+	public void append(int winner, int seats, byte[] dice, byte[] moves, int throwsMade) throws IOException {
+		if (throwsInBlock+throwsMade > this.dice.length) {	// Grow the stream columns
+			int size = Math.max(this.dice.length*2, throwsInBlock+throwsMade);
+			this.dice = Arrays.copyOf(this.dice, size);
+			this.moves = Arrays.copyOf(this.moves, size);
+		}
+		this.winner[games] = (byte) winner;
+		this.seats[games] = (byte) seats;
+		length[games] = throwsMade;
+		System.arraycopy(dice, 0, this.dice, throwsInBlock, throwsMade);
+		System.arraycopy(moves, 0, this.moves, throwsInBlock, throwsMade);
+		throwsInBlock += throwsMade;
+		if (++games == blockSize) {
+			flushBlock();
+		}
+	}
+
+	/**
+	 * Writes the current block column by column and records its statistics in the directory.
+	 */
+	void flushBlock() throws IOException {
+		if (games == 0) {
+			return;
+		}
+		int min = Integer.MAX_VALUE;
+		int max = 0;
+		int winners = 0;	// One bit per winner found in the block
+		for (int i=0; i<games; i++) {
+			min = Math.min(min, length[i]);
+			max = Math.max(max, length[i]);
+			winners |= 1 << (winner[i] < 0 ? NO_WINNER : winner[i]);
+		}
+
+		// Columns: winner, seats, start of each game's streams (games+1), dice, moves
+		ByteBuffer block = ByteBuffer.allocate(blockBytes(games, throwsInBlock)).order(ByteOrder.LITTLE_ENDIAN);
+		block.put(winner, 0, games);
+		block.put(seats, 0, games);
+		int start = 0;
+		for (int i=0; i<games; i++) {
+			block.putInt(start);
+			start += length[i];
+		}
+		block.putInt(start);
+		block.put(dice, 0, throwsInBlock);
+		block.put(moves, 0, throwsInBlock);
+		block.flip();
+		while (block.hasRemaining()) {
+			channel.write(block, offset+block.position());
+		}
+
+		if (directory.remaining() < ENTRY_SIZE) {
+			ByteBuffer grown = ByteBuffer.allocate(directory.capacity()*2).order(ByteOrder.LITTLE_ENDIAN);
+			directory.flip();
+			directory = grown.put(directory);
+		}
+		directory.putLong(offset).putInt(games).putInt(min).putInt(max).putInt(winners)
+				.putLong(throwsInBlock);
+
+		offset += block.limit();
+		totalGames += games;
+		blocks++;
+		games = 0;
+		throwsInBlock = 0;
+	}
+
+	/**
+	 * Gets the size of a block in bytes.
+	 * @param games Games in the block
+	 * @param throwsMade Throws in the block
+	 * @return The block size
+	 */
+	static int blockBytes(int games, int throwsMade) {
+		return 2*games + 4*(games+1) + 2*throwsMade;
+	}
+
+	/**
+	 * Writes the last block, the directory and the header, and closes the file.
+	 * @throws IOException if the file cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBlock();
+			directory.flip();
+			long directoryOffset = offset;
+			while (directory.hasRemaining()) {
+				channel.write(directory, directoryOffset+directory.position());
+			}
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(blockSize).putInt(blocks)
+					.putLong(totalGames).putLong(directoryOffset).flip();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/**
+ * @author Johanne
+ */
+package archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a columnar archive written by ArchiveWriter through memory-mapped I/O.
+ * Queries first check each block's directory entry (shortest and longest game, which winners
+ * occur) and only map and scan the blocks that can contain a match; within a block only the
+ * winner column and the stream offsets are read until a game actually matches.
+ */
+public class GameArchive implements Closeable {
+	public static final int ANY_WINNER = -1;	// Winner mask accepting every winner
+
+	final FileChannel channel;
+	final int blockSize;
+	final int blocks;
+	final long games;
+
+	// === DIRECTORY, ONE ENTRY PER BLOCK ========================================================== //
+	final long[] offset;
+	final int[] blockGames;
+	final int[] minLength;
+	final int[] maxLength;
+	final int[] winners;	// One bit per winner in the block; bit 31 for games without a winner
+	final long[] blockThrows;
+
+	long blocksScanned;		// Blocks mapped by queries, to see how much a query skipped
+
+	/**
+	 * Opens an archive and reads its directory.
+	 * @param file The archive file
+	 * @throws IOException if the file cannot be read or is not an archive
+	 */
+	public GameArchive(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			MappedByteBuffer header = map(0, ArchiveWriter.HEADER_SIZE);
+			if (header.getInt() != ArchiveWriter.MAGIC || header.getInt() != ArchiveWriter.VERSION) {
+				throw new IOException("Not a game archive: "+file);
+			}
+			blockSize = header.getInt();
+			blocks = header.getInt();
+			games = header.getLong();
+			long directoryOffset = header.getLong();
+
+			offset = new long[blocks];
+			blockGames = new int[blocks];
+			minLength = new int[blocks];
+			maxLength = new int[blocks];
+			winners = new int[blocks];
+			blockThrows = new long[blocks];
+			MappedByteBuffer directory = map(directoryOffset, (long) blocks*ArchiveWriter.ENTRY_SIZE);
+			for (int b=0; b<blocks; b++) {
+				offset[b] = directory.getLong();
+				blockGames[b] = directory.getInt();
+				minLength[b] = directory.getInt();
+				maxLength[b] = directory.getInt();
+				winners[b] = directory.getInt();
+				blockThrows[b] = directory.getLong();
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the number of games in the archive.
+	 * @return Number of games
+	 */
+	public long games() {
+		return games;
+	}
+
+	/**
+	 * Gets the number of blocks in the archive.
+	 * @return Number of blocks
+	 */
+	public int blocks() {
+		return blocks;
+	}
+
+	/**
+	 * Gets the number of blocks mapped and scanned by queries so far.
+	 * @return Number of blocks scanned
+	 */
+	public long getBlocksScanned() {
+		return blocksScanned;
+	}
+
+	/**
+	 * Visits every game won by one of the given players with a length in the given range,
+	 * e.g. query(1 << 3, 0, 59, visitor) for all games won by seat 3 in under 60 throws.
+	 * The Game passed to the visitor is reused and only valid during the call.
+	 * @param winnerMask One bit per accepted winner, or ANY_WINNER
+	 * @param minThrows Shortest accepted game, in throws
+	 * @param maxThrows Longest accepted game, in throws
+	 * @param visitor Receives the matching games
+	 * @return Number of matching games
+	 * @throws IOException if a block cannot be mapped
+	 */
+	public long query(int winnerMask, int minThrows, int maxThrows, GameVisitor visitor) throws IOException {
+		long matches = 0;
+		Game game = new Game();
+		for (int b=0; b<blocks; b++) {
+			// Skip blocks whose statistics rule out every game in them
+			if ((winners[b] & winnerMask) == 0 || maxLength[b] < minThrows || minLength[b] > maxThrows) {
+				continue;
+			}
+			int n = blockGames[b];
+			game.block = map(offset[b], ArchiveWriter.blockBytes(n, (int) blockThrows[b]));
+			game.games = n;
+			blocksScanned++;
+			for (int i=0; i<n; i++) {
+				int winner = game.block.get(i);
+				if ((1 << (winner < 0 ? ArchiveWriter.NO_WINNER : winner) & winnerMask) == 0) {
+					continue;
+				}
+				int start = game.block.getInt(2*n + 4*i);
+				int length = game.block.getInt(2*n + 4*(i+1)) - start;
+				if (length < minThrows || length > maxThrows) {
+					continue;
+				}
+				game.index = (long) b*blockSize + i;
+				game.slot = i;
+				game.start = start;
+				game.length = length;
+				if (visitor != null) {
+					visitor.visit(game);
+				}
+				matches++;
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Maps part of the file, little-endian like ArchiveWriter writes it.
+	 */
+	MappedByteBuffer map(long position, long size) throws IOException {
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * A game in a mapped block. Reads its columns directly from the mapping.
+	 */
+	public static class Game {
+		MappedByteBuffer block;
+		int games;	// Games in the block, needed to find the columns
+		long index;
+		int slot;	// Position of the game within its block
+		int start;	// Position of the game's first throw in the stream columns
+		int length;
+
+		/**
+		 * Gets the game's position in the archive, in the order the games were appended.
+		 * @return The game index
+		 */
+		public long index() {
+			return index;
+		}
+
+		/**
+		 * Gets the winner of the game.
+		 * @return The winner, or -1 if the game has none
+		 */
+		public int winner() {
+			return block.get(slot);
+		}
+
+		/**
+		 * Gets the number of players in the game.
+		 * @return Number of players
+		 */
+		public int seats() {
+			return block.get(games+slot);
+		}
+
+		/**
+		 * Gets the length of the game.
+		 * @return Number of throws
+		 */
+		public int length() {
+			return length;
+		}
+
+		/**
+		 * Gets the dice of one of the game's throws.
+		 * @param n The throw (0 to length()-1)
+		 * @return The dice (1-6)
+		 */
+		public int dice(int n) {
+			return block.get(6*games + 4 + start + n);
+		}
+
+		/**
+		 * Gets the piece moved after one of the game's throws.
+		 * @param n The throw (0 to length()-1)
+		 * @return The piece (0-3), or -1 if none was moved
+		 */
+		public int move(int n) {
+			int total = block.getInt(6*games);	// The last stream offset is the block's throw count
+			return block.get(6*games + 4 + total + start + n);
+		}
+	}
+}
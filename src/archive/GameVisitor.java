@@ -0,0 +1,11 @@
+/**
+ * @author Johanne
+ */
+package archive;
+
+/**
+ * Interface for receiving the games matched by a GameArchive query.
+ */
+public interface GameVisitor {
+	void visit(GameArchive.Game game);
+}
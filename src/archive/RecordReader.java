@@ -0,0 +1,136 @@
+/**
+ * @author Johanne
+ */
+package archive;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import logic.BoardLayout;
+import logic.Ludo;
+
+/**
+ * Plays back a game recorded by RecordWriter, one turn at a time, straight from the stream.
+ * Each turn is fed to a Ludo through throwDice() and movePiece(), the same calls the GUI makes,
+ * so listeners on the game see the recorded game as if it were played live.
+ */
+public class RecordReader implements Closeable {
+	final DataInputStream in;
+	final String[] names;
+	int bits;			// Bits read but not yet used, lowest bit first
+	int bitCount;
+	boolean ended;
+	long turns;
+
+	/**
+	 * Opens a record and reads its header.
+	 * @param in The stream to read from, closed by close()
+	 * @throws IOException if the stream cannot be read or is not a game record
+	 */
+	public RecordReader(InputStream in) throws IOException {
+		this.in = new DataInputStream(in);
+		int magic = this.in.readInt();
+		int version = this.in.readByte();
+		if (magic != RecordWriter.MAGIC || version < 1 || version > RecordWriter.VERSION) {
+			throw new IOException("Not a game record");
+		}
+		names = new String[this.in.readByte()];
+		for (int i=0; i<names.length; i++) {
+			names[i] = this.in.readUTF();
+		}
+	}
+
+	/**
+	 * Gets the names of the recorded players, in seat order.
+	 * @return The names
+	 */
+	public String[] getNames() {
+		return names.clone();
+	}
+
+	/**
+	 * Creates a game with the recorded players, ready to be played back by next().
+	 * @return A new game
+	 */
+	public Ludo newGame() {
+		return new Ludo(BoardLayout.STANDARD, names);
+	}
+
+	/**
+	 * Reads the next turn without playing it.
+	 * @return The turn: the dice (bits 0-2), the piece or how a passed turn ended (bits 3-4) and
+	 * the pass flag (bit 5), or -1 at the end of the game
+	 * @throws IOException if the stream cannot be read or ends too early
+	 */
+	public int nextTurn() throws IOException {
+		if (ended) {
+			return -1;
+		}
+		if (bitCount < RecordWriter.TURN_BITS) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Game record ends without an end marker");
+			}
+			bits |= b << bitCount;
+			bitCount += 8;
+		}
+		int turn = bits & (1 << RecordWriter.TURN_BITS) - 1;
+		bits >>>= RecordWriter.TURN_BITS;
+		bitCount -= RecordWriter.TURN_BITS;
+		if ((turn & 7) == 0) {	// Dice 0 is the end marker
+			ended = true;
+			return -1;
+		}
+		turns++;
+		return turn;
+	}
+
+	/**
+	 * Reads the next turn and plays it on the given game: throws the dice and, unless the
+	 * player passed, moves the recorded piece. A turn that ended with a refused move or with
+	 * passTurn() is ended the same way.
+	 * @param ludo The game, as created by newGame() and played back by this reader so far
+	 * @return Whether a turn was played; false at the end of the game
+	 * @throws IOException if the stream cannot be read
+	 */
+	public boolean next(Ludo ludo) throws IOException {
+		int turn = nextTurn();
+		if (turn == -1) {
+			return false;
+		}
+		int dice = turn & 7;
+		int player = ludo.getCurrentPlayer();
+		ludo.throwDice(dice);
+		int piece = turn >> 3 & 3;
+		if ((turn & RecordWriter.PASS) == 0) {
+			int pos = ludo.getLocalPosition(player, piece);
+			if (pos == 0) {		// Pieces at home are put out on the start field
+				ludo.movePiece(player, 0, 1);
+			} else {
+				ludo.movePiece(player, pos, pos+dice);
+			}
+		} else if (piece == RecordWriter.GIVEN_UP) {
+			ludo.passTurn();
+		} else if (piece != 0) {
+			// Past the goal, so always refused; a 6 moved from the board leaves an extra throw
+			ludo.movePiece(player, piece == RecordWriter.REFUSED_EXTRA ? 1 : 0, ludo.getLayout().goalLocal()+1);
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the number of turns read so far.
+	 * @return Number of turns
+	 */
+	public long getTurns() {
+		return turns;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
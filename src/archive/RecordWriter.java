@@ -0,0 +1,184 @@
+/**
+ * @author Johanne
+ */
+package archive;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import logic.DiceEvent;
+import logic.DiceListener;
+import logic.GameState;
+import logic.Ludo;
+import logic.MovesCheckedEvent;
+import logic.PieceEvent;
+import logic.PieceListener;
+import logic.PlayerEvent;
+import logic.PlayerListener;
+
+/**
+ * Records a live game as it is played, in the compact record format read by RecordReader.
+ * Attach it to a game before the first throw; every throw and move is packed and written as
+ * it happens, so a game of any length needs only a few bytes of memory.
+ *
+ * Format: the magic "LUDR", a version byte, the number of players and their names (as
+ * DataOutputStream.writeUTF), then 6 bits per turn, filled from the lowest bit of each byte:
+ * the dice (3 bits), the piece moved (2 bits) and a pass flag (1 bit) set when no piece was
+ * moved. A dice of 0 ends the game. The piece recorded is one that stood where the move was
+ * made from; Ludo moves the first piece on that field, which is not always the same piece.
+ *
+ * Any move that Ludo refuses ends the turn, as does Ludo.passTurn() after a throw. Such a turn
+ * is recorded with the pass flag and, in the piece bits, how it ended: REFUSED for a refused
+ * move that left no extra throw, REFUSED_EXTRA for one that left an extra throw (a 6 moved
+ * from the board), and GIVEN_UP for passTurn() or a refusal that left the turn as passTurn()
+ * does. RecordReader plays these back with a move that Ludo refuses in the same way, or with
+ * passTurn(), so the game goes on from the same state. A plain pass, when no piece could move,
+ * has 0 in the piece bits. Players are seated from RED in the order of the names, as Ludo's
+ * constructors seat them; players leaving or joining during the game, and turns given up
+ * before the dice are thrown, are not recorded.
+ */
+public class RecordWriter implements DiceListener, PieceListener, PlayerListener, Closeable {
+	static final int MAGIC = 0x4C554452;	// "LUDR"
+	static final int VERSION = 2;	// 1 recorded refused moves as moves from home
+	static final int TURN_BITS = 6;
+	static final int PASS = 1 << 5;
+	static final int REFUSED = 1;		// How a turn with the pass flag ended, in the piece bits
+	static final int REFUSED_EXTRA = 2;
+	static final int GIVEN_UP = 3;
+
+	final Ludo ludo;
+	final DataOutputStream out;
+	long bits;			// Packed turns not yet written, lowest bit first
+	int bitCount;		// Number of bits in bits
+	int pending = -1;	// The current player's dice, until it is known whether a piece moves
+	int pendingPlayer;
+	boolean passes;		// Whether the pending throw ends the turn by itself if no piece can move
+	long turns;
+
+	/**
+	 * Starts recording a game, writes the header and registers as its DiceListener,
+	 * PieceListener and PlayerListener.
+	 * @param ludo The game, before its first throw
+	 * @param out The stream to write to, closed by close()
+	 * @throws IOException if the header cannot be written
+	 */
+	public RecordWriter(Ludo ludo, OutputStream out) throws IOException {
+		this.ludo = ludo;
+		this.out = new DataOutputStream(out);
+		GameState names = new GameState(ludo);	// Names without the "Inactive: " prefix
+		this.out.writeInt(MAGIC);
+		this.out.writeByte(VERSION);
+		this.out.writeByte(ludo.noOfPlayers());
+		for (int i=0; i<ludo.noOfPlayers(); i++) {
+			this.out.writeUTF(names.getPlayerName(i));
+		}
+		ludo.addDiceListener(this);
+		ludo.addPieceListener(this);
+		ludo.addPlayerListener(this);
+	}
+
+	@Override
+	public void diceThrown(DiceEvent event) {
+		if (pending != -1) {	// The last throw did not move a piece
+			write(pending | PASS);
+			turns++;
+		}
+		pending = event.getDice();
+		pendingPlayer = event.getPlayer();
+		// Only a missed last attempt to roll 6, or a throw without movesChecked(), ends the turn
+		// by itself; the attempt is read the same way LudoController does
+		int attempt = ludo.getAttempt();
+		passes = attempt == -1 || pending != 6 && attempt >= ludo.getRules().lastAttempt();
+	}
+
+	@Override
+	public void movesChecked(MovesCheckedEvent event) {
+		passes = false;
+	}
+
+	@Override
+	public void playerStateChanged(PlayerEvent event) {
+		// The turn ended without a move, though the throw did not end it: a refused move or passTurn()
+		if (event.getState() == PlayerEvent.WAITING && pending != -1 && !passes
+				&& event.getPlayer() == pendingPlayer) {
+			int end = ludo.getExtraThrow() ? REFUSED_EXTRA : ludo.getAttempt() == -1 ? GIVEN_UP : REFUSED;
+			write(pending | PASS | end << 3);
+			turns++;
+			pending = -1;
+		}
+	}
+
+	@Override
+	public void pieceMoved(PieceEvent event) {
+		// Pieces knocked home belong to another player and have their own PieceEvent
+		if (pending != -1 && event.getPlayer() == pendingPlayer && event.getNewPos() != 0) {
+			write(pending | movedFrom(event) << 3);
+			turns++;
+			pending = -1;
+		}
+	}
+
+	/**
+	 * Finds a piece that stood on the field the move was made from. Fields 1 and 53 are the
+	 * same global field, so the piece moved may have come from the other of the two.
+	 */
+	int movedFrom(PieceEvent event) {
+		for (int i=0; i<4; i++) {	// Pieces other than the moved one have not moved yet
+			if (i != event.getPiece() && ludo.getLocalPosition(event.getPlayer(), i) == event.getCurrentPos()) {
+				return i;
+			}
+		}
+		return event.getPiece();
+	}
+
+	/**
+	 * Packs one turn and writes every whole byte packed so far.
+	 */
+	void write(int turn) {
+		bits |= (long) turn << bitCount;
+		bitCount += TURN_BITS;
+		try {
+			for (; bitCount >= 8; bitCount -= 8) {
+				out.write((int) bits);
+				bits >>>= 8;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);	// Listeners cannot throw IOException
+		}
+	}
+
+	/**
+	 * Gets the number of turns recorded so far.
+	 * @return Number of turns
+	 */
+	public long getTurns() {
+		return turns;
+	}
+
+	/**
+	 * Writes the last turn and the end of the game, and closes the stream.
+	 * @throws IOException if the stream cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (pending != -1) {
+				write(pending | PASS);
+				turns++;
+				pending = -1;
+			}
+			write(0);			// The end marker
+			if (bitCount > 0) {	// Pad the last byte
+				out.write((int) bits);
+				bitCount = 0;
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,31 @@
+/**
+ * @author Johanne
+ */
+package bot;
+
+import logic.GameView;
+
+/**
+ * Knocks other players' pieces home whenever it can, taking the piece that had come furthest,
+ * and otherwise moves like Runner. Safe to share between threads.
+ */
+public class Aggressive implements Strategy {
+	@Override
+	public int choosePiece(GameView game, int dice, int movable) {
+		int player = game.getCurrentPlayer();
+		int best = -1;
+		int bestScore = Integer.MIN_VALUE;
+		for (int m=movable; m != 0; m &= m-1) {
+			int piece = Integer.numberOfTrailingZeros(m);
+			int target = Moves.target(game, player, piece, dice);
+			int victim = Moves.victimProgress(game, player, target);
+			// Any capture ranks above any other move
+			int score = victim > 0 ? 1000+victim : game.getLocalPosition(player, piece);
+			if (score > bestScore) {
+				best = piece;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,233 @@
+/**
+ * @author Johanne
+ */
+package bot;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import logic.BoardLayout;
+import logic.GameView;
+
+/**
+ * A process-wide cache of position evaluations, shared by every evaluator wrapped with wrap().
+ * Positions are keyed by a compact 128-bit key holding every piece position, the seats taken,
+ * the active players, the rules, the current player, the dice and the evaluator. On boards of
+ * up to four players whose fields fit in six bits, such as the standard board, these are
+ * packed exactly, so different positions never share an entry; on other boards they are
+ * hashed into the 128 bits. The cache is split into segments, each a small LRU map behind its
+ * own lock, and evicts the least recently used positions when a segment is full.
+ */
+public class EvaluationCache {
+	static final int SEGMENTS = 64;	// Power of two
+	static final int POSITION_BITS = 6;	// Enough for local fields up to 63
+	static final int MAX_EVALUATORS = 256;	// Ids fit in 8 bits of the key
+
+	static final EvaluationCache SHARED = new EvaluationCache(
+			Integer.getInteger("ludo.evaluationCache.size", 1 << 20));
+
+	final Segment[] segments = new Segment[SEGMENTS];
+	final AtomicInteger evaluators = new AtomicInteger();	// Ids handed out by wrap()
+	final LongAdder hits = new LongAdder();
+	final LongAdder misses = new LongAdder();
+	final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Gets the cache shared by the whole process. Its size is set with the system property
+	 * ludo.evaluationCache.size (default 1048576 positions).
+	 * @return The shared cache
+	 */
+	public static EvaluationCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Creates a cache.
+	 * @param capacity Number of positions to keep
+	 */
+	public EvaluationCache(int capacity) {
+		for (int i=0; i<SEGMENTS; i++) {
+			segments[i] = new Segment(Math.max(1, capacity/SEGMENTS));
+		}
+	}
+
+	/**
+	 * Wraps an evaluator so that its evaluations go through this cache.
+	 * Each wrapped evaluator has entries of its own, under an id that is never given back:
+	 * a cache can wrap 256 evaluators in its lifetime, so wrap evaluators once and share
+	 * the result.
+	 * @param evaluator The evaluator to cache
+	 * @return A caching evaluator
+	 * @throws IllegalStateException if the cache has wrapped 256 evaluators already
+	 */
+	public Evaluator wrap(Evaluator evaluator) {
+		final int id = evaluators.getAndUpdate(n -> Math.min(n+1, MAX_EVALUATORS));
+		if (id >= MAX_EVALUATORS) {
+			throw new IllegalStateException("The evaluation cache has wrapped "+MAX_EVALUATORS
+					+" evaluators already; wrap each evaluator once and share it");
+		}
+		return (game, dice) -> get(id, game, dice, evaluator);
+	}
+
+	/**
+	 * Gets the cached value of a position, evaluating and caching it if it is missing.
+	 * The evaluation runs outside the segment lock, so a position requested by two threads
+	 * at once may be evaluated twice.
+	 */
+	double get(int evaluator, GameView game, int dice, Evaluator source) {
+		Key key = key(evaluator, game, dice);
+		Segment segment = segments[(int) (key.hash() >>> 58)];	// Top 6 bits pick the segment
+		Double value;
+		synchronized (segment) {
+			value = segment.get(key);
+		}
+		if (value != null) {
+			hits.increment();
+			return value;
+		}
+		misses.increment();
+		double result = source.evaluate(game, dice);
+		synchronized (segment) {
+			segment.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Builds the key of a position. Positions, seats, rules, current player, dice and
+	 * evaluator are packed into two longs as long as they fit, as on the standard board;
+	 * larger boards are hashed into the two longs instead.
+	 */
+	static Key key(int evaluator, GameView game, int dice) {
+		BoardLayout layout = game.getLayout();
+		int pieces = layout.players()*4;
+		int registered = 0;
+		int active = 0;
+		for (int pl=0; pl<layout.players(); pl++) {
+			registered |= game.getPlayerName(pl) != null ? 1 << pl : 0;
+			active |= game.isActive(pl) ? 1 << pl : 0;
+		}
+		long rules = game.getRules().toBits();
+		long hi = 0;
+		long lo = 0;
+		if (pieces <= 16 && layout.goalLocal() < 1 << POSITION_BITS) {
+			for (int i=0; i<8; i++) {	// 8 pieces of 6 bits in each long
+				lo = lo << POSITION_BITS | (i < pieces ? game.getLocalPosition(i/4, i%4) : 0);
+				hi = hi << POSITION_BITS | (i+8 < pieces ? game.getLocalPosition((i+8)/4, i%4) : 0);
+			}
+			hi |= (long) registered << 48 | (long) active << 52 | (long) (game.getCurrentPlayer() & 7) << 56
+					| (long) dice << 60;
+			lo |= (long) evaluator << 48 | rules << 56;
+		} else {
+			hi = evaluator;
+			lo = ~(long) evaluator;
+			for (int i=0; i<pieces; i++) {
+				hi = mix(hi + game.getLocalPosition(i/4, i%4));
+				lo = mix(lo ^ game.getLocalPosition(i/4, i%4));
+			}
+			hi = mix(hi + game.getCurrentPlayer()*8 + dice + (rules << 32));
+			lo = mix(lo ^ ((long) registered << 32 | active));
+		}
+		return new Key(hi, lo);
+	}
+
+	/**
+	 * The SplitMix64 finalizer.
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Gets the number of lookups answered from the cache.
+	 * @return Number of hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Gets the number of lookups that had to be evaluated.
+	 * @return Number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Gets the number of positions evicted to make room for new ones.
+	 * @return Number of evictions
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Gets the share of lookups answered from the cache.
+	 * @return The hit rate (0-1), or 0 before the first lookup
+	 */
+	public double getHitRate() {
+		long h = getHits();
+		long total = h + getMisses();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d hits, %d misses (%.1f%% hit rate), %d evictions",
+				getHits(), getMisses(), getHitRate()*100, getEvictions());
+	}
+
+	/**
+	 * A position key: two longs, compared exactly.
+	 */
+	static final class Key {
+		final long hi;
+		final long lo;
+
+		Key(long hi, long lo) {
+			this.hi = hi;
+			this.lo = lo;
+		}
+
+		long hash() {
+			return mix(hi ^ mix(lo));
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) hash();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && ((Key) o).hi == hi && ((Key) o).lo == lo;
+		}
+	}
+
+	/**
+	 * One segment of the cache: an LRU map that evicts its eldest entry when full.
+	 */
+	final class Segment extends LinkedHashMap<Key, Double> {
+		private static final long serialVersionUID = 1L;
+		final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);	// Access order, for LRU eviction
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+			if (size() > capacity) {
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,20 @@
+/**
+ * @author Johanne
+ */
+package bot;
+
+import logic.GameView;
+
+/**
+ * Interface for position evaluation: how good a position is for the current player,
+ * who has just thrown the given dice.
+ */
+public interface Evaluator {
+	/**
+	 * Evaluates a position.
+	 * @param game The game, read-only
+	 * @param dice The dice the current player has thrown (1-6)
+	 * @return The value of the position; higher is better for the current player
+	 */
+	double evaluate(GameView game, int dice);
+}
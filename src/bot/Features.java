@@ -0,0 +1,174 @@
+/**
+ * @author Johanne
+ */
+package bot;
+
+import logic.BoardLayout;
+import logic.GameView;
+
+/**
+ * The position features of the linear value function trained by TdTrainer, seen from one
+ * player. Features are computed from the GameView as it would be after a move, without
+ * making the move or allocating, so a strategy can evaluate every movable piece. Players are
+ * taken to sit in the first noOfPlayers() seats, as Ludo's constructors seat them, and moves
+ * are taken to follow the standard rules.
+ */
+final class Features {
+	static final int BIAS = 0;
+	static final int PROGRESS = 1;			// The player's fields covered, as a part of the whole way
+	static final int HOME = 2;				// The player's pieces at home, as a part of all four
+	static final int GOAL = 3;				// The player's pieces in the goal
+	static final int STRETCH = 4;			// The player's pieces in the home stretch, short of the goal
+	static final int EXPOSED = 5;			// The player's pieces another piece could land on with one throw
+	static final int BLOCKADES = 6;			// The player's pieces sharing a ring field with another of them, halved
+	static final int LEADER = 7;			// The progress of the opponent who has come furthest
+	static final int OPPONENTS = 8;			// The opponents' average progress
+	static final int OPPONENTS_HOME = 9;	// The opponents' average part of pieces at home
+	static final int TARGETS = 10;			// The opponents' pieces the player could land on with one throw
+	static final int COUNT = 11;
+
+	private Features() {
+	}
+
+	/**
+	 * Evaluates a position for a player, after a move.
+	 * @param w The weights, COUNT of them
+	 * @param game The game before the move
+	 * @param player The player the position is evaluated for
+	 * @param mover The player making the move
+	 * @param piece The piece moved, or -1 to evaluate the position as it is
+	 * @param target The local field the piece moves to
+	 * @param x Filled with the features, or null
+	 * @return The estimated probability that the player wins
+	 */
+	static double value(double[] w, GameView game, int player, int mover, int piece, int target, double[] x) {
+		BoardLayout layout = game.getLayout();
+		int lap = layout.lapField();
+		int goal = layout.goalLocal();
+		int captured = -1;		// The global field where pieces are knocked home
+		if (piece >= 0 && target <= layout.lapField()) {
+			int global = layout.globalFromLocal(mover, target);
+			int color = game.getFieldColor(global);
+			captured = color != -1 && color != mover ? global : -1;
+		}
+
+		double progress = 0, home = 0, inGoal = 0, stretch = 0, exposed = 0, blockades = 0, targets = 0;
+		double leader = 0, opponents = 0, opponentsHome = 0;
+		int players = game.noOfPlayers();
+		for (int pl=0; pl<players; pl++) {
+			int sum = 0;
+			int atHome = 0;
+			for (int pi=0; pi<4; pi++) {
+				int pos = position(game, pl, pi, mover, piece, target, captured);
+				sum += pos;
+				atHome += pos == 0 ? 1 : 0;
+				if (pl == player) {
+					inGoal += pos == goal ? 1 : 0;
+					stretch += pos > lap && pos < goal ? 1 : 0;
+					if (pos > 0 && pos <= lap) {
+						int global = layout.globalFromLocal(pl, pos);
+						int company = company(game, pl, pi, global, mover, piece, target, captured);
+						blockades += company > 0 ? 0.5 : 0;
+						if (global != layout.startField(pl) && company == 0 && reached(game, pl, global, mover, piece, target, captured)) {
+							exposed++;
+						}
+					}
+				} else if (pos > 0 && pos <= lap) {
+					int global = layout.globalFromLocal(pl, pos);
+					if (global != layout.startField(pl) && company(game, pl, pi, global, mover, piece, target, captured) == 0
+							&& reachedBy(game, player, global, mover, piece, target, captured)) {
+						targets++;
+					}
+				}
+			}
+			double part = (double) sum / (4*goal);
+			if (pl == player) {
+				progress = part;
+				home = atHome / 4.0;
+			} else {
+				leader = Math.max(leader, part);
+				opponents += part / (players-1);
+				opponentsHome += atHome / 4.0 / (players-1);
+			}
+		}
+		targets /= 4*(players-1);
+
+		double sum = w[BIAS] + w[PROGRESS]*progress + w[HOME]*home + w[GOAL]*inGoal/4 + w[STRETCH]*stretch/4
+				+ w[EXPOSED]*exposed/4 + w[BLOCKADES]*blockades/4 + w[LEADER]*leader + w[OPPONENTS]*opponents
+				+ w[OPPONENTS_HOME]*opponentsHome + w[TARGETS]*targets;
+		if (x != null) {
+			x[BIAS] = 1;
+			x[PROGRESS] = progress;
+			x[HOME] = home;
+			x[GOAL] = inGoal/4;
+			x[STRETCH] = stretch/4;
+			x[EXPOSED] = exposed/4;
+			x[BLOCKADES] = blockades/4;
+			x[LEADER] = leader;
+			x[OPPONENTS] = opponents;
+			x[OPPONENTS_HOME] = opponentsHome;
+			x[TARGETS] = targets;
+		}
+		return 1 / (1 + Math.exp(-sum));
+	}
+
+	/**
+	 * Gets where a piece stands after the move.
+	 */
+	static int position(GameView game, int pl, int pi, int mover, int piece, int target, int captured) {
+		if (pl == mover && pi == piece) {
+			return target;
+		}
+		int pos = game.getLocalPosition(pl, pi);
+		if (captured != -1 && pl != mover && pos > 0 && pos <= game.getLayout().lapField()
+				&& game.getLayout().globalFromLocal(pl, pos) == captured) {
+			return 0;
+		}
+		return pos;
+	}
+
+	/**
+	 * Counts the other pieces of a player on the same ring field after the move.
+	 */
+	static int company(GameView game, int pl, int pi, int global, int mover, int piece, int target, int captured) {
+		BoardLayout layout = game.getLayout();
+		int company = 0;
+		for (int other=0; other<4; other++) {
+			int pos = position(game, pl, other, mover, piece, target, captured);
+			if (other != pi && pos > 0 && pos <= layout.lapField() && layout.globalFromLocal(pl, pos) == global) {
+				company++;
+			}
+		}
+		return company;
+	}
+
+	/**
+	 * Gets whether a piece of any other player could land on a ring field with one throw after the move.
+	 */
+	static boolean reached(GameView game, int player, int global, int mover, int piece, int target, int captured) {
+		for (int pl=0; pl<game.noOfPlayers(); pl++) {
+			if (pl != player && reachedBy(game, pl, global, mover, piece, target, captured)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets whether a piece of the given player could land on a ring field with one throw after the move.
+	 */
+	static boolean reachedBy(GameView game, int pl, int global, int mover, int piece, int target, int captured) {
+		BoardLayout layout = game.getLayout();
+		int reach = layout.localFromGlobal(pl, global);
+		if (reach == 1) {
+			reach = layout.lapField();	// Players reach their own start field at the end of a lap
+		}
+		for (int pi=0; pi<4; pi++) {
+			int distance = reach - position(game, pl, pi, mover, piece, target, captured);
+			if (distance >= 1 && distance <= 6 && reach - distance > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,16 @@
+/**
+ * @author Johanne
+ */
+package bot;
+
+import logic.GameView;
+
+/**
+ * Always moves the lowest numbered movable piece, like the lockstep BatchEngine does.
+ */
+public class FirstPiece implements Strategy {
+	@Override
+	public int choosePiece(GameView game, int dice, int movable) {
+		return Integer.numberOfTrailingZeros(movable);
+	}
+}
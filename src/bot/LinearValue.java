@@ -0,0 +1,120 @@
+/**
+ * @author Johanne
+ */
+package bot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import logic.GameView;
+
+/**
+ * Moves the piece that leaves the position with the highest value, as estimated by a linear
+ * function of the position's Features trained by TdTrainer: the probability of winning is
+ * the logistic function of the weighted sum of the features. Evaluating a move reads the
+ * game without changing or copying it and allocates nothing. Safe to share between threads.
+ *
+ * Weights are stored in a file of 6 bytes of header followed by a float per feature:
+ * the magic number "LUDW" (4 bytes), the file version (1 byte) and the number of weights (1 byte).
+ */
+public class LinearValue implements Strategy, Evaluator {
+	static final int MAGIC = 0x4C554457;	// "LUDW"
+	static final int VERSION = 1;
+
+	final double[] weights;
+
+	/**
+	 * Creates a strategy with the given weights.
+	 * @param weights One weight per feature, as trained by TdTrainer
+	 */
+	public LinearValue(double[] weights) {
+		if (weights.length != Features.COUNT) {
+			throw new IllegalArgumentException("Expected "+Features.COUNT+" weights, got "+weights.length);
+		}
+		this.weights = weights.clone();
+	}
+
+	@Override
+	public int choosePiece(GameView game, int dice, int movable) {
+		int player = game.getCurrentPlayer();
+		int best = -1;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int m=movable; m != 0; m &= m-1) {
+			int piece = Integer.numberOfTrailingZeros(m);
+			int target = Moves.target(game, player, piece, dice);
+			double value = Features.value(weights, game, player, player, piece, target, null);
+			if (value > bestValue) {
+				best = piece;
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Estimates the probability that the current player wins from the position as it stands.
+	 */
+	@Override
+	public double evaluate(GameView game, int dice) {
+		int player = game.getCurrentPlayer();
+		return Features.value(weights, game, player, player, -1, 0, null);
+	}
+
+	/**
+	 * Gets the weights.
+	 * @return A copy of the weights
+	 */
+	public double[] getWeights() {
+		return weights.clone();
+	}
+
+	/**
+	 * Writes weights to a file.
+	 * @param file The file to write
+	 * @param weights The weights
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void save(Path file, double[] weights) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeByte(weights.length);
+			for (double weight : weights) {
+				out.writeFloat((float) weight);
+			}
+		}
+	}
+
+	/**
+	 * Reads the weights written by save() and creates a strategy with them.
+	 * @param file The file to read
+	 * @return The strategy
+	 * @throws IOException if the file cannot be read or does not hold weights for these features
+	 */
+	public static LinearValue load(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+				throw new IOException("Not a weights file: "+file);
+			}
+			double[] weights = new double[in.readUnsignedByte()];
+			if (weights.length != Features.COUNT) {
+				throw new IOException("Expected "+Features.COUNT+" weights, found "+weights.length+" in "+file);
+			}
+			for (int i=0; i<weights.length; i++) {
+				weights[i] = in.readFloat();
+			}
+			return new LinearValue(weights);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "LinearValue"+Arrays.toString(weights);
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * @author Johanne
+ */
+package bot;
+
+import logic.BoardLayout;
+import logic.GameView;
+
+/**
+ * Features of a single move, shared by the heuristic strategies. Every feature is computed
+ * straight from the GameView, without allocating, so a strategy can score each movable piece
+ * on every decision. Safe fields are those of the standard rules: a player's own start field,
+ * a field held by another of the player's pieces (which forms a blockade), and the home stretch.
+ */
+final class Moves {
+	static final int MAX_RING = 57;	// Longest ring a reach mask holds, with room for 6 fields past its end
+
+	private Moves() {
+	}
+
+	/**
+	 * Gets the local field a piece ends up on.
+	 * @return The local destination; pieces at home are put out on field 1
+	 */
+	static int target(GameView game, int player, int piece, int dice) {
+		int pos = game.getLocalPosition(player, piece);
+		return pos == 0 ? 1 : pos+dice;
+	}
+
+	/**
+	 * Gets the player whose pieces are knocked home by moving to a local field.
+	 * @return The player, or -1 if the move captures nothing
+	 */
+	static int captures(GameView game, int player, int local) {
+		if (local > game.getLayout().lapField()) {
+			return -1;		// No other player enters the home stretch
+		}
+		int global = game.getLayout().globalFromLocal(player, local);
+		int color = game.getFieldColor(global);
+		return color == player ? -1 : color;
+	}
+
+	/**
+	 * Gets how far along its path the piece captured on a local field had come.
+	 * @return The victim's local position, or 0 if the move captures nothing
+	 */
+	static int victimProgress(GameView game, int player, int local) {
+		int victim = captures(game, player, local);
+		if (victim == -1) {
+			return 0;
+		}
+		BoardLayout layout = game.getLayout();
+		return layout.localFromGlobal(victim, layout.globalFromLocal(player, local));
+	}
+
+	/**
+	 * Gets whether a piece on a local field is out of reach of other players.
+	 * @param company How many of the player's pieces, counting the one looked at, must be on
+	 * the field for a blockade: 1 for a field being moved to, 2 for a field a piece stands on
+	 */
+	static boolean safe(GameView game, int player, int local, int company) {
+		BoardLayout layout = game.getLayout();
+		if (local == 0 || local > layout.lapField()) {
+			return true;
+		}
+		int global = layout.globalFromLocal(player, local);
+		return global == layout.startField(player)
+				|| game.getFieldColor(global) == player && game.getPieceCount(global) >= company;
+	}
+
+	/**
+	 * Finds the ring fields that the other players' pieces can reach with a single throw.
+	 * Computed once per decision, so that inReach() is a single lookup for each piece.
+	 * @return One bit per ring field, starting at the start field of player 0, or 0 if the
+	 * ring is too long for a mask
+	 */
+	static long reach(GameView game, int player) {
+		BoardLayout layout = game.getLayout();
+		int ring = layout.lapField()-1;
+		if (ring > MAX_RING) {
+			return 0;
+		}
+		int base = layout.startField(0);
+		long reach = 0;
+		for (int pl=0; pl<layout.players(); pl++) {
+			if (pl == player) {
+				continue;
+			}
+			for (int pi=0; pi<4; pi++) {
+				int pos = game.getLocalPosition(pl, pi);
+				// None at home, in the home stretch or with nowhere left to go on the ring
+				int ahead = pos == 0 ? 0 : Math.max(0, Math.min(6, layout.lapField()-pos));
+				long fields = ((1L << ahead) - 1) << layout.globalFromLocal(pl, pos)-base+1;
+				reach |= (fields | fields >>> ring) & (1L << ring) - 1;	// Wrap around the ring
+			}
+		}
+		return reach;
+	}
+
+	/**
+	 * Gets whether another player's piece can reach a local field on the ring with a single
+	 * throw. Whether the field is safe is left to the caller.
+	 * @param reach The fields found by reach() for the same decision
+	 */
+	static boolean inReach(GameView game, int player, int local, long reach) {
+		BoardLayout layout = game.getLayout();
+		int global = layout.globalFromLocal(player, local);
+		if (layout.lapField()-1 <= MAX_RING) {
+			return (reach >>> global-layout.startField(0) & 1) != 0;
+		}
+		for (int pl=0; pl<layout.players(); pl++) {	// A ring too long for a mask
+			if (pl == player) {
+				continue;
+			}
+			int target = layout.localFromGlobal(pl, global);
+			if (target == 1) {
+				target = layout.lapField();	// Other players reach their own start field at the end of a lap
+			}
+			for (int pi=0; pi<4; pi++) {
+				int pos = game.getLocalPosition(pl, pi);
+				if (pos > 0 && target-pos >= 1 && target-pos <= 6) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,19 @@
+/**
+ * @author Johanne
+ */
+package bot;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import logic.GameView;
+import logic.LudoDriver;
+
+/**
+ * Moves a random movable piece. Safe to share between threads.
+ */
+public class RandomPiece implements Strategy {
+	@Override
+	public int choosePiece(GameView game, int dice, int movable) {
+		return LudoDriver.pick(movable, ThreadLocalRandom.current().nextInt(Integer.bitCount(movable)));
+	}
+}
@@ -0,0 +1,28 @@
+/**
+ * @author Johanne
+ */
+package bot;
+
+import logic.GameView;
+
+/**
+ * Moves the movable piece that has come furthest, to get one piece into the goal before
+ * starting on the next. Safe to share between threads.
+ */
+public class Runner implements Strategy {
+	@Override
+	public int choosePiece(GameView game, int dice, int movable) {
+		int player = game.getCurrentPlayer();
+		int best = -1;
+		int bestPos = -1;
+		for (int m=movable; m != 0; m &= m-1) {
+			int piece = Integer.numberOfTrailingZeros(m);
+			int pos = game.getLocalPosition(player, piece);
+			if (pos > bestPos) {
+				best = piece;
+				bestPos = pos;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,33 @@
+/**
+ * @author Johanne
+ */
+package bot;
+
+import logic.GameView;
+
+/**
+ * Keeps its pieces out of reach: prefers moves onto safe fields, such as the start field,
+ * the home stretch or a field that forms a blockade, then moves that leave the piece out of
+ * reach of the other players' pieces, and among those the one that gets furthest.
+ * Safe to share between threads.
+ */
+public class Safe implements Strategy {
+	@Override
+	public int choosePiece(GameView game, int dice, int movable) {
+		int player = game.getCurrentPlayer();
+		long reach = Moves.reach(game, player);
+		int best = -1;
+		int bestScore = Integer.MIN_VALUE;
+		for (int m=movable; m != 0; m &= m-1) {
+			int piece = Integer.numberOfTrailingZeros(m);
+			int target = Moves.target(game, player, piece, dice);
+			int score = Moves.safe(game, player, target, 1) ? 1000+target
+					: Moves.inReach(game, player, target, reach) ? target : 100+target;
+			if (score > bestScore) {
+				best = piece;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+}
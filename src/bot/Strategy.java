@@ -0,0 +1,21 @@
+/**
+ * @author Johanne
+ */
+package bot;
+
+import logic.GameView;
+
+/**
+ * Interface for move selection. Called when the current player has thrown the dice
+ * and must choose which of the movable pieces to move.
+ */
+public interface Strategy {
+	/**
+	 * Chooses a piece to move for the current player.
+	 * @param game The game, read-only
+	 * @param dice The dice that was thrown (1-6)
+	 * @param movable The movable pieces, one bit per piece (never 0)
+	 * @return One of the movable pieces (0-3)
+	 */
+	int choosePiece(GameView game, int dice, int movable);
+}
@@ -0,0 +1,73 @@
+/**
+ * @author Johanne
+ */
+package bot;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+import logic.GameState;
+import logic.GameView;
+import logic.Ludo;
+import logic.LudoDriver;
+import sim.DiceStream;
+
+/**
+ * Measures how fast the strategies choose a piece, and how much they allocate doing it.
+ * Positions are taken from random games wherever the player had more than one piece to choose
+ * from, and every strategy is timed choosing on the same positions.
+ * Usage: StrategyBench [positions] [decisions] [seed]
+ */
+public class StrategyBench {
+	static final int MAX_THROWS = 100000;
+
+	public static void main(String[] args) {
+		int positions = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+		long decisions = args.length > 1 ? Long.parseLong(args[1]) : 100000000;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+		GameView[] games = new GameView[positions];
+		int[] dice = new int[positions];
+		int[] movable = new int[positions];
+		int found = 0;
+		for (long g=0; found<positions; g++) {
+			LudoDriver driver = new LudoDriver(new Ludo("Red", "Blue", "Yellow", "Green"));
+			for (int n=0; n<MAX_THROWS && found<positions && driver.getGame().getWinner() == -1; n++) {
+				int d = DiceStream.roll(seed, g, n);
+				int m = driver.roll(d);
+				if (Integer.bitCount(m) > 1) {
+					games[found] = new GameState(driver.getGame());
+					dice[found] = d;
+					movable[found++] = m;
+				}
+				if (m != 0) {
+					driver.move(LudoDriver.pick(m, DiceStream.roll(~seed, g, n)));
+				}
+			}
+		}
+
+		Strategy[] strategies = {new FirstPiece(), new Runner(), new Aggressive(), new Safe(), new Weighted()};
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		int sink = 0;
+		for (Strategy strategy : strategies) {
+			for (int i=0; i<positions*256; i++) {	// Warm up
+				sink += strategy.choosePiece(games[i % positions], dice[i % positions], movable[i % positions]);
+			}
+			long allocated = threads.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			for (long n=0, i=0; n<decisions; n++) {
+				sink += strategy.choosePiece(games[(int) i], dice[(int) i], movable[(int) i]);
+				if (++i == positions) {
+					i = 0;
+				}
+			}
+			double seconds = (System.nanoTime()-start) / 1e9;
+			allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+			System.out.printf("%-12s %6.1f million decisions/s, %.3f bytes/decision%n",
+					strategy.getClass().getSimpleName(), decisions/seconds/1e6, (double) allocated/decisions);
+		}
+		System.out.println("("+sink+")");	// Keeps the choices from being optimized away
+	}
+}
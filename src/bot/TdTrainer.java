@@ -0,0 +1,229 @@
+/**
+ * @author Johanne
+ */
+package bot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import logic.Ludo;
+import logic.LudoDriver;
+import sim.DiceStream;
+import sim.Tournament;
+
+/**
+ * Trains the weights of LinearValue by self-play with temporal-difference learning, TD(lambda).
+ * Every player moves the piece that leaves the position with the highest value, or now and
+ * then a random piece to explore. After each of its moves, the value of the player's position
+ * is moved towards the value of its position after its next move, and at the end of the game
+ * towards 1 for the winner and 0 for the others.
+ *
+ * Training runs in epochs. During an epoch the weights stay fixed, and the games are split
+ * between threads, each adding up the changes its games call for. At the end of the epoch the
+ * changes are merged in thread order and applied, so a run gives the same weights every time
+ * for the same seed and number of threads. Dice come from the DiceStream, and the moves
+ * made to explore from a random generator seeded with the game's number.
+ * Usage: TdTrainer [epochs] [games per epoch] [threads] [weights file] [seed]
+ */
+public class TdTrainer {
+	static final int MAX_THROWS = 100000;
+
+	final double alpha;
+	final double lambda;
+	final double epsilon;
+	final int threads;
+	final long seed;
+	final double[] weights = new double[Features.COUNT];
+	long games;		// Games played so far, which numbers the next game's dice
+
+	/**
+	 * Creates a trainer starting from zero weights.
+	 * @param alpha Learning rate, applied to the average change of an epoch's games
+	 * @param lambda Decay of the eligibility traces (0-1)
+	 * @param epsilon Probability of moving a random piece
+	 * @param threads Threads to play each epoch's games on
+	 * @param seed Seed for the DiceStream
+	 */
+	public TdTrainer(double alpha, double lambda, double epsilon, int threads, long seed) {
+		this.alpha = alpha;
+		this.lambda = lambda;
+		this.epsilon = epsilon;
+		this.threads = threads;
+		this.seed = seed;
+	}
+
+	/**
+	 * Gets the weights trained so far.
+	 * @return A copy of the weights
+	 */
+	public double[] getWeights() {
+		return weights.clone();
+	}
+
+	/**
+	 * Continues training from the given weights.
+	 * @param weights One weight per feature
+	 */
+	public void setWeights(double[] weights) {
+		System.arraycopy(weights, 0, this.weights, 0, this.weights.length);
+	}
+
+	/**
+	 * Plays the games of one epoch and applies what they learned.
+	 * @param count Number of games
+	 * @throws InterruptedException if interrupted while waiting for the games
+	 */
+	public void epoch(int count) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<double[]>> parts = new ArrayList<>();
+			for (int t=0; t<threads; t++) {
+				final int thread = t;
+				parts.add(pool.submit((Callable<double[]>) () -> play(thread, count)));
+			}
+			double[] change = new double[Features.COUNT];
+			for (Future<double[]> part : parts) {
+				double[] delta = part.get();
+				for (int i=0; i<change.length; i++) {
+					change[i] += delta[i];
+				}
+			}
+			for (int i=0; i<weights.length; i++) {
+				weights[i] += alpha * change[i] / count;
+			}
+			games += count;
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Plays a thread's share of an epoch: every threads-th game, starting with the given one.
+	 * @return The sum of the changes to the weights
+	 */
+	double[] play(int thread, int count) {
+		double[] delta = new double[Features.COUNT];
+		double[][] features = new double[4][Features.COUNT];	// Each player's features after its last move
+		double[][] traces = new double[4][Features.COUNT];
+		double[] values = new double[4];
+		boolean[] moved = new boolean[4];
+		double[] x = new double[Features.COUNT];
+		for (int g=thread; g<count; g+=threads) {
+			long game = games + g;
+			for (int pl=0; pl<4; pl++) {
+				Arrays.fill(traces[pl], 0);
+				moved[pl] = false;
+			}
+			SplittableRandom random = new SplittableRandom(seed ^ game*0x9E3779B97F4A7C15L);
+			LudoDriver driver = new LudoDriver(new Ludo("Red", "Blue", "Yellow", "Green"));
+			Ludo ludo = driver.getGame();
+			for (int n=0; n<MAX_THROWS && ludo.getWinner() == -1; n++) {
+				int dice = DiceStream.roll(seed, game, n);
+				int player = ludo.getCurrentPlayer();
+				int movable = driver.roll(dice);
+				if (movable == 0) {
+					continue;
+				}
+				if (random.nextDouble() < epsilon) {
+					driver.move(LudoDriver.pick(movable, random.nextInt(Integer.bitCount(movable))));
+				} else {
+					driver.move(choose(ludo, player, dice, movable));
+				}
+
+				double value = Features.value(weights, ludo, player, player, -1, 0, x);
+				if (moved[player]) {
+					learn(delta, traces[player], features[player], values[player], value);
+				}
+				System.arraycopy(x, 0, features[player], 0, x.length);
+				values[player] = value;
+				moved[player] = true;
+			}
+			for (int pl=0; pl<4; pl++) {
+				if (moved[pl]) {
+					learn(delta, traces[pl], features[pl], values[pl], pl == ludo.getWinner() ? 1 : 0);
+				}
+			}
+		}
+		return delta;
+	}
+
+	/**
+	 * Chooses the best piece by the current weights.
+	 */
+	int choose(Ludo ludo, int player, int dice, int movable) {
+		int best = -1;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int m=movable; m != 0; m &= m-1) {
+			int piece = Integer.numberOfTrailingZeros(m);
+			double value = Features.value(weights, ludo, player, player, piece, Moves.target(ludo, player, piece, dice), null);
+			if (value > bestValue) {
+				best = piece;
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Adds one TD(lambda) step to the changes: the previous value is moved towards the next.
+	 * @param delta The changes to the weights
+	 * @param trace The player's eligibility trace
+	 * @param x The features of the previous position
+	 * @param value The value of the previous position
+	 * @param next The value of the next position, or the outcome of the game
+	 */
+	void learn(double[] delta, double[] trace, double[] x, double value, double next) {
+		double error = next - value;
+		double slope = value * (1-value);	// Derivative of the logistic function
+		for (int i=0; i<trace.length; i++) {
+			trace[i] = lambda*trace[i] + slope*x[i];
+			delta[i] += error * trace[i];
+		}
+	}
+
+	/**
+	 * Trains weights, saves them and plays them against Weighted.
+	 */
+	public static void main(String[] args) throws InterruptedException, IOException {
+		int epochs = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		Path file = Paths.get(args.length > 3 ? args[3] : "ludo.weights");
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+
+		TdTrainer trainer = new TdTrainer(0.5, 0.7, 0.05, threads, seed);
+		if (Files.exists(file)) {
+			trainer.setWeights(LinearValue.load(file).getWeights());
+			System.out.println("Continuing from "+file);
+		}
+		long start = System.nanoTime();
+		for (int e=1; e<=epochs; e++) {
+			trainer.epoch(count);
+			if (e % 20 == 0 || e == epochs) {
+				System.out.printf("Epoch %d, %d games in %.1f s: %s%n", e, trainer.games,
+						(System.nanoTime()-start) / 1e9, new LinearValue(trainer.getWeights()));
+			}
+		}
+		LinearValue.save(file, trainer.getWeights());
+		System.out.println("Saved "+Files.size(file)+" bytes to "+file);
+
+		LinearValue trained = LinearValue.load(file);
+		System.out.println("Against RandomPiece: "+new Tournament(trained, new RandomPiece(), 0.05, 0.01, 0.01,
+				10000, threads, seed+1).run());
+		System.out.println("Against Weighted: "+new Tournament(trained, new Weighted(), 0.02, 0.01, 0.01,
+				10000, threads, seed+1).run());
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ * @author Johanne
+ */
+package bot;
+
+import logic.BoardLayout;
+import logic.GameView;
+
+/**
+ * Scores every movable piece as a weighted sum of features of its move and moves the piece
+ * with the highest score. The features are:
+ * capture (1 for knocking a piece home, plus how far that piece had come, as a part of a lap),
+ * safe (1 for ending on a safe field), out (1 for putting a piece out), goal (1 for reaching
+ * the goal), progress (the destination as a part of the path), threat (1 if another player's
+ * piece could reach the destination with one throw) and escape (1 if another player's piece
+ * could reach the piece where it stands). Safe to share between threads.
+ */
+public class Weighted implements Strategy {
+	final double capture;
+	final double safe;
+	final double out;
+	final double goal;
+	final double progress;
+	final double threat;
+	final double escape;
+
+	/**
+	 * Creates a strategy with weights that beat each of the single-feature strategies.
+	 */
+	public Weighted() {
+		this(4, 1.5, 2, 1, 1, -1.5, 1);
+	}
+
+	/**
+	 * Creates a strategy with the given weights.
+	 * @param capture Weight of capturing
+	 * @param safe Weight of ending on a safe field
+	 * @param out Weight of putting a piece out
+	 * @param goal Weight of reaching the goal
+	 * @param progress Weight of the destination
+	 * @param threat Weight of ending in reach of another piece; usually negative
+	 * @param escape Weight of moving away from where another piece can reach
+	 */
+	public Weighted(double capture, double safe, double out, double goal, double progress,
+			double threat, double escape) {
+		this.capture = capture;
+		this.safe = safe;
+		this.out = out;
+		this.goal = goal;
+		this.progress = progress;
+		this.threat = threat;
+		this.escape = escape;
+	}
+
+	@Override
+	public int choosePiece(GameView game, int dice, int movable) {
+		BoardLayout layout = game.getLayout();
+		int player = game.getCurrentPlayer();
+		long reach = Moves.reach(game, player);
+		int best = -1;
+		double bestScore = Double.NEGATIVE_INFINITY;
+		for (int m=movable; m != 0; m &= m-1) {
+			int piece = Integer.numberOfTrailingZeros(m);
+			int pos = game.getLocalPosition(player, piece);
+			int target = Moves.target(game, player, piece, dice);
+			int victim = Moves.victimProgress(game, player, target);
+			double score = progress * target / layout.goalLocal();
+			if (victim > 0) {
+				score += capture * (1 + (double) victim / layout.lapField());
+			}
+			if (Moves.safe(game, player, target, 1)) {
+				score += safe;
+			} else if (Moves.inReach(game, player, target, reach)) {
+				score += threat;
+			}
+			if (!Moves.safe(game, player, pos, 2) && Moves.inReach(game, player, pos, reach)) {
+				score += escape;
+			}
+			if (pos == 0) {
+				score += out;
+			}
+			if (target == layout.goalLocal()) {
+				score += goal;
+			}
+			if (score > bestScore) {
+				best = piece;
+				bestScore = score;
+			}
+		}
+		return best;
+	}
+}
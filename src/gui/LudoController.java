@@ -3,9 +3,24 @@
  */
 package gui;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import bot.Strategy;
+import bot.Weighted;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.Slider;
+import javafx.scene.effect.DropShadow;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseEvent;
@@ -15,18 +30,25 @@ import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
+import javafx.stage.FileChooser;
 import logic.DiceEvent;
 import logic.DiceListener;
+import logic.GameState;
 import logic.Ludo;
 import logic.MovesCheckedEvent;
 import logic.PieceEvent;
 import logic.PieceListener;
 import logic.PlayerEvent;
 import logic.PlayerListener;
+import logic.Replay;
 
 /**
  * The controller class for the Ludo game itself. Used by LudoController and handles Ludo events in
  * addition to controlling all the graphics for the game.
+ *
+ * The game runs on its own engine thread: button presses and clicks are handed to it, and Ludo's
+ * events are queued by the listeners, which run on that thread. Once per pulse the FX application
+ * thread drains the queue and draws only the end result, so a burst of moves costs one redraw.
  */
 public class LudoController implements DiceListener, PieceListener, PlayerListener {
 	
@@ -45,16 +67,61 @@ public class LudoController implements DiceListener, PieceListener, PlayerListen
     @FXML private Pane		player4Pane;
     @FXML private ImageView diceThrown;
     @FXML private Button 	throwTheDice;
+    @FXML private CheckBox	hintMode;
+    @FXML private Label		replayTurn;
+    @FXML private Slider	replaySlider;
 	
-	Ludo ludo;	// The Ludo object
-	private int dice;	// moveForward() needs the dice
+	Ludo ludo;	// The Ludo object, only used on the engine thread after initialize()
+	private int dice;	// The last dice thrown, needed to move pieces
+
+	/**
+	 * All calls to Ludo are made on this thread, so its listeners run here too.
+	 */
+	final ExecutorService engine = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "Ludo engine");
+		thread.setDaemon(true);	// Must not keep the application running
+		return thread;
+	});
+	final ConcurrentLinkedQueue<Object> events = new ConcurrentLinkedQueue<>();	// Not yet drawn
+	final AtomicBoolean pulseScheduled = new AtomicBoolean();	// applyUpdates() is pending
+	volatile boolean canThrow = true;	// Whether the throw dice button should be enabled
 
 	Circle[][] pieces = new Circle[4][4];	// The graphical pieces
 	Text[] labels = new Text[8];		// Labels telling how many pieces there currently are
 										 // on each field; only shown when there are two or more
 	double[][] labelPos = new double[labels.length][2];	// Stores the X and Y positions of each label
 	
-	boolean[][] movable = new boolean[4][4]; // Whether each piece can be moved at any time
+	boolean[][] movable = new boolean[4][4]; // Whether each piece can be moved at any time,
+											 // kept by the engine thread
+	
+	/**
+	 * Hints are computed by this strategy on a background thread, from a snapshot of the game,
+	 * so that an expensive strategy never holds up the FX application thread.
+	 */
+	Strategy hintStrategy = new Weighted();
+	final ExecutorService hintThread = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "Ludo hints");
+		thread.setDaemon(true);	// Must not keep the application running
+		return thread;
+	});
+	Future<?> hintTask;		// The hint being computed, if any
+	final AtomicInteger hintGeneration = new AtomicInteger();	// Increased whenever hints become stale
+	volatile long hint = -1;	// The generation << 32 | player*4+piece of the hint, or -1
+	volatile boolean hintsOn;	// Mirrors hintMode for the engine thread
+	Circle hinted;			// The piece currently highlighted as the hint
+	final DropShadow hintEffect = new DropShadow(18, Color.WHITE);
+	
+	/**
+	 * A loaded replay replaces the live game on the board. The engine thread seeks to the turn
+	 * chosen with the slider and hands a snapshot of it to the next pulse, which redraws
+	 * every piece from it.
+	 */
+	Replay replay;			// The game being replayed, if any; only used on the engine thread
+	volatile int replayTarget;	// The turn chosen with the slider
+	volatile GameState replayState;	// A replayed turn waiting to be drawn
+	int replayShown = -1;	// The turn of replayState, written before it
+	int replayTurns;		// The length of the replay, written before replayState
+	int replayDice;			// The dice of the last turn in replayState, 0 if none
 	
 	static final double UNIT = 48;	// The distance between fields
 	static final double HOME = 216; // The distance from the center of the board
@@ -95,10 +162,12 @@ public class LudoController implements DiceListener, PieceListener, PlayerListen
 		player3Name.setText(ludo.getPlayerName(Ludo.YELLOW));
 		player4Name.setText(ludo.getPlayerName(Ludo.GREEN));
 		
-		// Remove the dice icon for all but the first player
-		player2Pane.getChildren().remove(player2Active);
-		player3Pane.getChildren().remove(player3Active);
-		player4Pane.getChildren().remove(player4Active);
+		// Hide the dice icon for all but the first player
+		player2Active.setVisible(false);
+		player3Active.setVisible(false);
+		player4Active.setVisible(false);
+		
+		replaySlider.valueProperty().addListener((value, oldTurn, newTurn) -> seekReplay(newTurn.intValue()));
 		
 		nextDir = new Dir[pattern.length];	// Allocate to nextDir[] the same size as pattern[]
 		
@@ -142,27 +211,47 @@ public class LudoController implements DiceListener, PieceListener, PlayerListen
 				final int piece = j;
 				pieces[i][j].setOnMouseClicked(
 					// Called every time a piece is clicked
-					(MouseEvent t) -> handlePieceClicked(player, piece)
+					(MouseEvent t) -> engine.execute(() -> handlePieceClicked(player, piece))
 				);
 			}
 		}
 	}
 	
 	/**
-	 * Called every time the throw dice button is clicked. Calls both Ludo's throwDice() methods
-	 * and is disabled and enabled as needed by event handlers.
+	 * Called every time the throw dice button is clicked. Disables the button and has the engine
+	 * thread call both Ludo's throwDice() methods; event handlers enable it again as needed.
 	 */
 	@FXML
 	public void throwDiceButtonPressed() {
 		throwTheDice.setDisable(true); // Disabled after use, reenabled by event handlers
-		dice = ludo.throwDice();
-		diceThrown.setImage(new Image("images/dice"+dice+".png"));
-		ludo.throwDice(dice);
+		engine.execute(() -> {
+			if (!canThrow) {	// A second click that got in before the button was disabled
+				return;
+			}
+			canThrow = false;
+			cancelHint();
+			dice = ludo.throwDice();
+			ludo.throwDice(dice);
+			requestPulse();
+			ludo.speculate();	// While the player decides, for the next throw
+		});
+	}
+	
+	/**
+	 * Called when hint mode is switched on or off.
+	 */
+	@FXML
+	public void hintModeChanged() {
+		hintsOn = hintMode.isSelected();
+		if (!hintsOn) {
+			engine.execute(this::cancelHint);
+		}
 	}
 	
 	/**
-	 * Called every time a piece is clicked. Together with event handlers, this method handles
-	 * the restrictions for when a player can click a piece, and what happens when they legally do.
+	 * Called on the engine thread every time a piece is clicked. Together with event handlers,
+	 * this method handles the restrictions for when a player can click a piece, and what happens
+	 * when they legally do. Ludo moves the first piece on the field; the graphics follow its events.
 	 * @param player The player that owns the clicked piece
 	 * @param piece The piece number
 	 */
@@ -171,23 +260,169 @@ public class LudoController implements DiceListener, PieceListener, PlayerListen
 		
 		// Check that the piece is movable and the game has started
 		if (movable[player][piece] && ludo.getStatus() == "STARTED") {
-			// Determine whether to call placeAtBoard() or moveForward()
+			cancelHint();
 			if (localPos == 0) {
-				for (int i=0; i<4; i++) { // Go through the pieces - must put out pieces in order
-					if (ludo.getLocalPosition(player, i) == 0) { // Moves the first piece found at home
-						placeAtBoard(player, i); // Calls ludo.movePiece()
-						break;
-					}
-				}
+				ludo.movePiece(player, 0, 1);	// Must put out pieces in order
 			} else {
-				// Check if there are several pieces on this field and pick the first
-				int globalPos = ludo.getGlobalFromLocal(player, localPos);
-				if (ludo.getFields()[globalPos].noOfPieces() > 1) { // Calls ludo.movePiece()
-					moveForward(player, ludo.getFields()[globalPos].getPiece(), dice);
-				} else {
-					moveForward(player, piece, dice); // Calls ludo.movePiece()
+				ludo.movePiece(player, localPos, localPos+dice);
+			}
+			requestPulse();
+			ludo.speculate();
+		}
+	}
+	
+	/**
+	 * Called when the load replay button is clicked. Asks for a replay file and has the engine
+	 * thread load it and show its first turn. The live game is stopped.
+	 */
+	@FXML
+	public void loadReplayButtonPressed() {
+		FileChooser chooser = new FileChooser();
+		chooser.setTitle("Load replay");
+		File file = chooser.showOpenDialog(stackPane.getScene().getWindow());
+		if (file == null) {
+			return;
+		}
+		engine.execute(() -> {
+			Replay loaded;
+			try {
+				loaded = Replay.load(file.toPath(), Replay.DEFAULT_INTERVAL);
+			} catch (IOException | RuntimeException e) {	// Unreadable, or not a legal game
+				Platform.runLater(() -> replayTurn.setText("Could not load "+file.getName()));
+				return;
+			}
+			replay = loaded;
+			canThrow = false;	// The live game is over once a replay is shown
+			for (int i=0; i<4; i++) {
+				for (int j=0; j<4; j++) {
+					movable[i][j] = false;
 				}
 			}
+			cancelHint();
+			replayShown = -1;	// Nothing of this replay is shown yet
+			replayTurns = loaded.getTurns();
+			replayTarget = 0;
+			showReplay();
+			Platform.runLater(() -> {
+				replaySlider.setMax(loaded.getTurns());
+				replaySlider.setValue(0);
+				replaySlider.setDisable(false);
+			});
+		});
+	}
+	
+	/**
+	 * Called when the replay slider moves. Only the latest turn chosen is shown; seeks that
+	 * are overtaken by a newer one before the engine gets to them do nothing.
+	 * @param turn The turn to show
+	 */
+	protected void seekReplay(int turn) {
+		replayTarget = turn;
+		engine.execute(this::showReplay);
+	}
+	
+	/**
+	 * Seeks the replay to the chosen turn and queues it for drawing. Called on the engine thread.
+	 */
+	protected void showReplay() {
+		int target = replayTarget;
+		if (replay == null || target == replayShown) {
+			return;
+		}
+		replay.seek(target);
+		replayShown = target;
+		replayDice = target > 0 ? replay.getDice(target-1) : 0;
+		replayState = new GameState(replay.getGame());
+		requestPulse();
+	}
+	
+	/**
+	 * Makes sure applyUpdates() runs on the FX application thread at the next pulse.
+	 * Any number of calls before then are served by that one run.
+	 */
+	protected void requestPulse() {
+		if (pulseScheduled.compareAndSet(false, true)) {
+			Platform.runLater(this::applyUpdates);
+		}
+	}
+	
+	/**
+	 * Draws everything that happened since the last pulse. The queued events are folded first:
+	 * each piece is drawn once at its latest position, and only the latest dice and player
+	 * are shown. Runs on the FX application thread.
+	 */
+	protected void applyUpdates() {
+		pulseScheduled.set(false);	// Events queued from now on get a new pulse
+		int[] target = new int[16];	// The latest local position of each piece
+		int moved = 0;				// The pieces in target[], one bit per piece
+		int shownDice = 0;
+		int playing = -1;
+		
+		for (Object event; (event = events.poll()) != null; ) {
+			if (event instanceof PieceEvent) {
+				PieceEvent e = (PieceEvent) event;
+				target[e.getPlayer()*4 + e.getPiece()] = e.getNewPos();
+				moved |= 1 << (e.getPlayer()*4 + e.getPiece());
+			} else if (event instanceof DiceEvent) {
+				shownDice = ((DiceEvent) event).getDice();
+			} else if (event instanceof PlayerEvent && ((PlayerEvent) event).getState() == PlayerEvent.PLAYING) {
+				playing = ((PlayerEvent) event).getPlayer();
+			}
+		}
+		
+		GameState replayed = replayState;	// A replayed turn replaces the whole board
+		if (replayed != null) {
+			replayState = null;
+			for (int i=0; i<16; i++) {
+				target[i] = replayed.getLocalPosition(i/4, i%4);
+			}
+			moved = 0xFFFF;
+			shownDice = replayDice;
+			playing = replayed.getCurrentPlayer();
+			replayTurn.setText("Turn "+replayShown+" of "+replayTurns);
+		}
+		
+		for (int bits = moved; bits != 0; bits &= bits-1) {
+			int i = Integer.numberOfTrailingZeros(bits);
+			showPiece(i/4, i%4, target[i]);
+		}
+		if (moved != 0) {
+			updateLabels();
+		}
+		if (shownDice != 0) {
+			diceThrown.setImage(new Image("images/dice"+shownDice+".png"));
+		}
+		if (playing != -1) {	// Show the dice icon for the player whose turn it is
+			player1Active.setVisible(playing == Ludo.RED);
+			player2Active.setVisible(playing == Ludo.BLUE);
+			player3Active.setVisible(playing == Ludo.YELLOW);
+			player4Active.setVisible(playing == Ludo.GREEN);
+		}
+		throwTheDice.setDisable(!canThrow);
+		
+		long current = hint;	// Show the hint if it is still for this turn
+		if (hinted != null) {
+			hinted.setEffect(null);
+			hinted = null;
+		}
+		if (current != -1 && (int) (current >>> 32) == hintGeneration.get()) {
+			hinted = pieces[(int) current / 4 % 4][(int) current % 4];
+			hinted.setEffect(hintEffect);
+		}
+	}
+	
+	/**
+	 * Draws a piece at the given local position of its player's path.
+	 * @param pl Player (RED, BLUE, YELLOW, GREEN)
+	 * @param pi Piece (0-3)
+	 * @param local Local position (0-59)
+	 */
+	public void showPiece(int pl, int pi, int local) {
+		if (local == 0) {
+			goHome(pl, pi);
+		} else {
+			placeAtBoard(pl, pi);
+			moveForward(pl, pi, 1, local-1);
 		}
 	}
 	
@@ -238,12 +473,10 @@ public class LudoController implements DiceListener, PieceListener, PlayerListen
 	/**
 	 * Moves a piece to its board entry field. From there it can be moved around the board.
 	 * This must be called between goHome() and moveForward().
-	 * Calls Ludo's movePiece().
 	 * @param pl Player (RED, BLUE, YELLOW, GREEN)
 	 * @param pi Piece (0-3)
 	 */
 	public void placeAtBoard(int pl, int pi) {
-		ludo.movePiece(pl, 0, 1);
 		switch(pl) {
 		case 0:
 			pieces[pl][pi].setTranslateY(-6*UNIT);
@@ -263,23 +496,17 @@ public class LudoController implements DiceListener, PieceListener, PlayerListen
 			break;
 		default: break;
 		}
-		checkPieceSharingPos(pl, pi, -1, -1);	// Called with -1 because the old field should be
-	}											 // ignored when placing a piece on the entry field
+	}
 	
 	/**
 	 * Moves the piece forward the given number of fields, following the player's path.
-	 * Calls Ludo's movePiece(). placeAtBoard() must be called before this.
+	 * placeAtBoard() must be called before this.
 	 * @param pl Player (RED, BLUE, YELLOW, GREEN)
 	 * @param pi Piece (0-3)
-	 * @param dice The dice that was thrown (1-6)
+	 * @param logicalPos The local position the piece is drawn at now (1-59)
+	 * @param steps The number of fields to move
 	 */
-	public void moveForward(int pl, int pi, int dice) {
-		double oldX = pieces[pl][pi].getTranslateX();	// The piece's current (old)
-		double oldY = pieces[pl][pi].getTranslateY();	 // graphical position
-		
-		int logicalPos = ludo.getLocalPosition(pl, pi); // Current logical position
-		ludo.movePiece(pl, logicalPos, logicalPos+dice);
-
+	public void moveForward(int pl, int pi, int logicalPos, int steps) {
 		for (int i=0; i<nextDir.length; i++) {	// Make a fresh copy of pattern[]
 			nextDir[i] = pattern[i];
 		}
@@ -304,7 +531,7 @@ public class LudoController implements DiceListener, PieceListener, PlayerListen
 			quarters = 3;
 		}
 				
-		for (int j=0; j<dice; j++) {
+		for (int j=0; j<steps; j++) {
 			if (arrayPos == 13 && quarters < 3) {	// Finished an iteration of the pattern
 				rotate(1);
 				arrayPos = 0;	// After rotating, start over at 0
@@ -344,7 +571,6 @@ public class LudoController implements DiceListener, PieceListener, PlayerListen
 			}
 			arrayPos++;
 		}
-		checkPieceSharingPos(pl, pi, oldX, oldY);
 	}
 	
 	/**
@@ -387,67 +613,42 @@ public class LudoController implements DiceListener, PieceListener, PlayerListen
 	}
 	
 	/**
-	 * Compares the graphical position of a piece to the player's other pieces.
-	 * Handles displaying when there are several pieces on the same field, both
-	 * adding and removing. Called by placeAtBoard() and moveForward(), after a move.
-	 * @param player Player (RED, BLUE, YELLOW, GREEN)
-	 * @param piece Piece (0-3)
-	 * @param oldX The TranslateX property of the old field (stored before the move)
-	 * @param oldY The TranslateY property of the old field (stored before the move)
+	 * Displays how many pieces there are on each field where a player has two or more.
+	 * Replaces all labels, so it is called once after all pieces of a pulse are drawn.
 	 */
-	protected void checkPieceSharingPos(int player, int piece, double oldX, double oldY) {
-		double newX = pieces[player][piece].getTranslateX();	// The piece's current (new)
-		double newY = pieces[player][piece].getTranslateY();	 // graphical position
-		int countOld = 0;	// Number of pieces on the old field
-		int countNew = 0;	// Number of pieces on the new field
-		
-		for (int i=0; i<4; i++) {	// Go through each of the player's other pieces
-			if (i != piece) {
-				if (pieces[player][i].getTranslateX() == oldX && // Compare pieces with the old field
-					pieces[player][i].getTranslateY() == oldY) {
-					countOld++;
-				}
-				if (pieces[player][i].getTranslateX() == newX && // Compare pieces with the new field
-					pieces[player][i].getTranslateY() == newY) {
-					countNew++;
-				}
-			}
-		}
-		
-		// Old field
-		removeLabel(oldX, oldY);
-		if (countOld > 1) {
-			addLabel(countOld, oldX, oldY);
-		}
-		// New field
-		removeLabel(newX, newY);
-		if (countNew > 0) {	// The current piece adds to the count
-			addLabel(countNew + 1, newX, newY);
-		}
-	}
-	
-	/**
-	 * Finds and removes the label at the field (posX, posY).
-	 * Helper method for checkPieceSharingPos().
-	 * @param posX The X translate of the label's field
-	 * @param posY The Y translate of the label's field
-	 */
-	protected void removeLabel(double posX, double posY) {
-		// Search labels[] for a match of both posX and posY
-		for (int i=0; i<labels.length; i++) {
-			if (labelPos[i][0] == posX && labelPos[i][1] == posY) {
+	protected void updateLabels() {
+		for (int i=0; i<labels.length; i++) {	// Remove the old labels
+			if (labels[i] != null) {
 				stackPane.getChildren().remove(labels[i]);
-				labelPos[i][0] = 0;
-				labelPos[i][1] = 0;
 				labels[i] = null;
-				return;
+			}
+		}
+		for (int player=0; player<4; player++) {
+			for (int piece=0; piece<4; piece++) {
+				if (pieces[player][piece] == null) {
+					continue;
+				}
+				double x = pieces[player][piece].getTranslateX();
+				double y = pieces[player][piece].getTranslateY();
+				int count = 1;
+				boolean first = true;	// Only the first piece on a field adds its label
+				for (int i=0; i<4; i++) {	// Compare with each of the player's other pieces
+					if (i != piece && pieces[player][i].getTranslateX() == x
+							&& pieces[player][i].getTranslateY() == y) {
+						count++;
+						first &= i > piece;
+					}
+				}
+				if (count > 1 && first) {
+					addLabel(count, x, y);
+				}
 			}
 		}
 	}
 	
 	/**
 	 * Adds a new label at the field (posX, posY). Assumes count > 1 and displays it.
-	 * Helper method for checkPieceSharingPos().
+	 * Helper method for updateLabels().
 	 * @param count The number of pieces on this field (should be greater than 1)
 	 * @param posX The X translate of the field
 	 * @param posY The Y translate of the field
@@ -470,7 +671,44 @@ public class LudoController implements DiceListener, PieceListener, PlayerListen
 		}
 	}
 
+	/**
+	 * Starts computing a hint for the current player on the hint thread, from a snapshot of the
+	 * game, so the engine can go on meanwhile. The hint is shown at the next pulse after it is
+	 * ready, unless it has become stale in the meantime. Called on the engine thread.
+	 * @param player The player to give a hint
+	 * @param movableMask The movable pieces, one bit per piece
+	 */
+	protected void requestHint(int player, int movableMask) {
+		cancelHint();
+		final int generation = hintGeneration.get();
+		final GameState state = new GameState(ludo);
+		final int thrown = dice;
+		hintTask = hintThread.submit(() -> {
+			int piece = hintStrategy.choosePiece(state, thrown, movableMask);
+			hint = (long) generation << 32 | player*4 + piece;
+			requestPulse();
+		});
+	}
+	
+	/**
+	 * Makes any hint shown or still being computed stale, so the next pulse removes it.
+	 * Called on the engine thread when a piece is clicked, the dice is thrown and the turn changes.
+	 */
+	protected void cancelHint() {
+		hintGeneration.incrementAndGet();
+		if (hintTask != null) {
+			hintTask.cancel(true);	// Interrupts strategies that check for it
+			hintTask = null;
+		}
+		if (hint != -1) {
+			hint = -1;
+			requestPulse();
+		}
+	}
+
 	// === NON-JFX EVENT HANDLERS ================================================================== //
+	// These run on the engine thread. They keep track of what may be clicked and queue the
+	// events for the next pulse, but never touch the scene graph.
 	
 	
 	/**
@@ -479,8 +717,9 @@ public class LudoController implements DiceListener, PieceListener, PlayerListen
 	 */
 	@Override
 	public void diceThrown(DiceEvent event) {
-		if (ludo.getAttempt() > -1 && ludo.getAttempt() < 2 && dice != 6) {
-			throwTheDice.setDisable(false);	// Can throw the dice again
+		events.add(event);
+		if (ludo.getAttempt() > -1 && ludo.getAttempt() < ludo.getRules().lastAttempt() && dice != 6) {
+			canThrow = true;	// Can throw the dice again
 		} else if (dice == 6) {
 			for (int piece=0; piece<4; piece++) {
 				if (ludo.getLocalPosition(event.getPlayer(), piece) == 0) {
@@ -501,18 +740,21 @@ public class LudoController implements DiceListener, PieceListener, PlayerListen
 			// checkMoves() also checks for pieces that can be moved out, so overwriting
 			 // what's done by diceThrown() above is okay
 		}
+		if (hintsOn) {
+			requestHint(event.getPlayer(), event.getMovableMask());
+		}
 	}
 
 	/**
-	 * Enables rerolling and moves graphical pieces home.
+	 * Enables rerolling and queues the move to be drawn.
 	 * @param event The PieceEvent that occurred
 	 */
 	@Override
 	public void pieceMoved(PieceEvent event) {
-		if (event.getNewPos() == 0) {	// Piece knocked home
-			goHome(event.getPlayer(), event.getPiece());
-		} else if (ludo.getExtraThrow()) {// Separate PieceEvents for pieces moved and knocked home
-			throwTheDice.setDisable(false);	// Can throw the dice again
+		events.add(event);
+		// Separate PieceEvents for pieces moved and knocked home
+		if (event.getNewPos() != 0 && ludo.getExtraThrow()) {
+			canThrow = true;	// Can throw the dice again
 		}
 		for (int i=0; i<4; i++) {	// Even if the player has an extra throw, they must throw
 			movable[event.getPlayer()][i] = false; // the dice again to be able to move
@@ -520,56 +762,25 @@ public class LudoController implements DiceListener, PieceListener, PlayerListen
 	}
 	
 	/**
-	 * Responds to players changing states: displays when the turn moves to the next player
+	 * Responds to players changing states: queues showing when the turn moves to the next player
 	 * and disables controls when the game is won.
 	 * @param event The PlayerEvent that occurred
 	 */
 	@Override
 	public void playerStateChanged(PlayerEvent event) {
 		int player = event.getPlayer();
+		events.add(event);
+		cancelHint();	// Any hint belongs to a turn that is over
 		
 		switch (event.getState()) {
 		case 0:	// WAITING
-			// Remove dice icon for this player
-			switch(player) {
-			case 0: // RED
-				player1Pane.getChildren().remove(player1Active);
-				break;
-			case 1: // BLUE
-				player2Pane.getChildren().remove(player2Active);
-				break;
-			case 2: // YELLOW
-				player3Pane.getChildren().remove(player3Active);
-				break;
-			case 3: // GREEN
-				player4Pane.getChildren().remove(player4Active);
-				break;
-			default: break;
-			}
-			
 			for (int i=0; i<4; i++) {	// Disable all pieces for this player
 				movable[player][i] = false;
 			}
 			break;
 			
 		case 1: // PLAYING
-			// Add dice icon for this player
-			switch(player) {
-			case 0: // RED
-				player1Pane.getChildren().add(player1Active);
-				break;
-			case 1: // BLUE
-				player2Pane.getChildren().add(player2Active);
-				break;
-			case 2: // YELLOW
-				player3Pane.getChildren().add(player3Active);
-				break;
-			case 3: // GREEN
-				player4Pane.getChildren().add(player4Active);
-				break;
-			default: break;
-			}
-			throwTheDice.setDisable(false); // Enable throwing the dice
+			canThrow = true; // Enable throwing the dice
 			break;
 			
 		case 2: // WON
@@ -579,10 +790,11 @@ public class LudoController implements DiceListener, PieceListener, PlayerListen
 					movable[i][j] = false;
 				}
 			}
-			throwTheDice.setDisable(true);
+			canThrow = false;
 			break;
 			
 		default: break;
 		}
+		requestPulse();
 	}
 }
\ No newline at end of file
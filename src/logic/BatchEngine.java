@@ -0,0 +1,352 @@
+/**
+ * @author Johanne
+ */
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * Plays many headless Ludo games in lockstep. Instead of one Ludo object per game, the state of
+ * every game is kept in parallel primitive arrays, and step() advances all of them by one throw.
+ * The rules are the same as in Ludo's throwDice() and movePiece(), including which piece is
+ * moved when several share a field, so a game played here ends exactly like a Ludo game
+ * driven by LudoDriver with the same dice and choices.
+ */
+public class BatchEngine {
+	final BoardLayout layout;
+	final int games;		// Number of games in the batch
+	final int seats;		// Players in each game; seats 0 to seats-1 are taken
+	final int fieldCount;	// Global fields per game
+	final int goal;			// Local goal field
+	final int[] paths;		// The layout's path table, shared
+	final int[] protectedOn;	// Players that cannot be knocked home on each global field
+	final int blockLimit;	// Pieces of one color that block other players
+	final int lastAttempt;	// The last of the attempts to roll 6
+
+	// === GAME STATES, ONE SLOT PER GAME ========================================================== //
+	final byte[] position;	// Local field of each piece, indexed (game*seats + player)*4 + piece
+	final byte[] count;		// Pieces on each field, indexed game*fieldCount + global
+	final byte[] color;		// Owner of the pieces on each field or -1, indexed like count[]
+	final byte[] current;	// The player whose turn it is
+	final byte[] attempt;	// -1 for in-game turns, 0-2 for the three attempts to roll 6
+	final boolean[] extraThrow;	// Whether the current player has an extra throw
+	final byte[] winner;	// The winner, or -1 while the game is running
+	final int[] throwsMade;	// Number of throws made in each game
+	int finished;			// Number of games with a winner
+
+	/**
+	 * Creates a batch of games on the given board, all with every seat taken.
+	 * @param layout The board to play on
+	 * @param games Number of games in the batch
+	 */
+	public BatchEngine(BoardLayout layout, int games) {
+		this(layout, games, layout.players());
+	}
+
+	/**
+	 * Creates a batch of games on the given board.
+	 * @param layout The board to play on
+	 * @param games Number of games in the batch
+	 * @param seats Players per game (2 to layout.players()), seated like Ludo's constructor does
+	 */
+	public BatchEngine(BoardLayout layout, int games, int seats) {
+		this(layout, Rules.STANDARD, games, seats);
+	}
+
+	/**
+	 * Creates a batch of games on the given board, played by the given rules.
+	 * @param layout The board to play on
+	 * @param rules The rules to play by
+	 * @param games Number of games in the batch
+	 * @param seats Players per game (2 to layout.players()), seated like Ludo's constructor does
+	 */
+	public BatchEngine(BoardLayout layout, Rules rules, int games, int seats) {
+		if (seats < 2) {
+			throw new NotEnoughPlayersException();
+		} else if (seats > layout.players()) {
+			throw new NoRoomForMorePlayersException();
+		} else if (layout.goalLocal() > Byte.MAX_VALUE) {
+			throw new IllegalArgumentException("Board too large for a batch: goal at "+layout.goalLocal());
+		}
+		this.layout = layout;
+		this.games = games;
+		this.seats = seats;
+		fieldCount = layout.fieldCount;
+		goal = layout.goal;
+		paths = layout.paths;
+		protectedOn = rules.protection(layout);
+		blockLimit = rules.blockLimit();
+		lastAttempt = rules.lastAttempt();
+
+		position = new byte[games*seats*4];
+		count = new byte[games*fieldCount];
+		color = new byte[games*fieldCount];
+		current = new byte[games];
+		attempt = new byte[games];
+		extraThrow = new boolean[games];
+		winner = new byte[games];
+		throwsMade = new int[games];
+		reset();
+	}
+
+	/**
+	 * Puts every game back to its initial state: all pieces at home and RED to throw.
+	 */
+	public void reset() {
+		Arrays.fill(position, (byte) 0);
+		Arrays.fill(count, (byte) 0);
+		Arrays.fill(color, (byte) -1);
+		Arrays.fill(current, (byte) 0);
+		Arrays.fill(attempt, (byte) -1);
+		Arrays.fill(extraThrow, false);
+		Arrays.fill(winner, (byte) -1);
+		Arrays.fill(throwsMade, 0);
+		for (int g=0; g<games; g++) {
+			for (int pl=0; pl<seats; pl++) {
+				count[g*fieldCount + layout.homeField(pl)] = 4;
+				color[g*fieldCount + layout.homeField(pl)] = (byte) pl;
+			}
+		}
+		finished = 0;
+	}
+
+	/**
+	 * Advances every running game by one throw. Whenever a player has a choice,
+	 * the lowest movable piece is moved.
+	 * @param dice The dice for each game (1-6); entries for finished games are ignored
+	 * @return Number of games still running
+	 */
+	public int step(int[] dice) {
+		for (int g=0; g<games; g++) {
+			if (winner[g] < 0) {
+				turn(g, dice[g], 0);
+			}
+		}
+		return games-finished;
+	}
+
+	/**
+	 * Advances a single game by one throw, like Ludo's throwDice(dice) followed by
+	 * clicking the chosen piece.
+	 * @param g The game
+	 * @param dice The dice (1-6)
+	 * @param choice Which movable piece to move, as a rank for LudoDriver.pick()
+	 * @return The piece that was chosen, or -1 if there was nothing to choose
+	 */
+	public int turn(int g, int dice, int choice) {
+		int player = current[g];
+		int base = (g*seats + player)*4;
+		throwsMade[g]++;
+
+		int settled = 0;	// Pieces at home or in goal
+		for (int i=0; i<4; i++) {
+			int pos = position[base+i];
+			settled += (pos == 0 | pos == goal) ? 1 : 0;
+		}
+		if (settled == 4 && attempt[g] == -1) {	// The player gets 3 dice rolls
+			attempt[g] = 0;
+		}
+
+		if (attempt[g] > -1) {	// The player is on one of 3 attempts to roll 6
+			if (dice == 6) {	// Guaranteed possible to move a piece out
+				attempt[g] = -1;
+				int piece = LudoDriver.pick(homeMask(base), choice);
+				move(g, player, 0, 1, dice);
+				return piece;
+			} else if (attempt[g] < lastAttempt) {
+				attempt[g]++;
+			} else {			// Final attempt
+				attempt[g] = -1;
+				nextPlayer(g);
+			}
+			return -1;
+		}
+
+		extraThrow[g] = false;	// A standard throw or an extra throw, as in checkMoves()
+		int movable = 0;
+		for (int i=0; i<4; i++) {
+			int pos = position[base+i];
+			if (pos != 0 && pos != goal) {
+				extraThrow[g] |= dice == 6;	// Set by movePiece() even when only checking
+				movable |= legal(g, player, pos, pos+dice) ? 1 << i : 0;
+			} else if (pos == 0 && dice == 6) {
+				movable |= 1 << i;
+			}
+		}
+		if (movable == 0) {		// No moves available, next player
+			nextPlayer(g);
+			return -1;
+		}
+		int piece = LudoDriver.pick(movable, choice);
+		int pos = position[base+piece];
+		if (pos == 0) {
+			move(g, player, 0, 1, dice);
+		} else {
+			move(g, player, pos, pos+dice, dice);
+		}
+		return piece;
+	}
+
+	/**
+	 * Checks a move like Ludo's canMove() does.
+	 * @return Whether the move is legal
+	 */
+	boolean legal(int g, int player, int from, int to) {
+		if (to > goal) {	// Dice is too high to get to the finish
+			return false;
+		}
+		int fields = g*fieldCount;
+		int path = player*layout.pathLength;
+		for (int t=from+1; t<=to; t++) {	// Road blockages, destination included
+			int global = fields+paths[path+t];
+			if (count[global] >= blockLimit & color[global] != player) {
+				return false;
+			}
+		}
+		int dest = paths[path+to];
+		int opponent = color[fields+dest];
+		// Pieces of another player may be knocked home unless they sit on a safe field
+		return !(count[fields+dest] > 0 && opponent != player && (protectedOn[dest] >> opponent & 1) != 0);
+	}
+
+	/**
+	 * Performs a move like Ludo's movePiece() does,
+	 * including passing the turn when the move turns out to be illegal.
+	 */
+	void move(int g, int player, int from, int to, int dice) {
+		if (dice == 6) {	// Extra throw when this move is not putting out a new piece
+			extraThrow[g] = from != 0;
+		}
+		if (!legal(g, player, from, to)) {
+			nextPlayer(g);
+			return;
+		}
+		int fields = g*fieldCount;
+		int path = player*layout.pathLength;
+		int src = paths[path+from];
+		int dest = paths[path+to];
+
+		if (count[fields+dest] > 0 && color[fields+dest] != player) {	// Knock the pieces home
+			int opponent = color[fields+dest];
+			for (int n=count[fields+dest]; n>0; n--) {	// More than one only without blockades
+				shift(g, opponent, dest, layout.homeField(opponent), 0);
+			}
+		}
+		shift(g, player, src, dest, to);
+		if (to == goal && count[fields+layout.goalField(player)] == 4) {	// Winning move
+			winner[g] = (byte) player;
+			finished++;
+		} else if (!extraThrow[g]) {
+			nextPlayer(g);
+		}
+	}
+
+	/**
+	 * Moves the lowest numbered of the player's pieces on a field, like Ludo's performMove().
+	 */
+	void shift(int g, int player, int src, int dest, int newLocal) {
+		int base = (g*seats + player)*4;
+		int path = player*layout.pathLength;
+		int piece = 0;
+		while (paths[path+position[base+piece]] != src) {
+			piece++;
+		}
+		int fields = g*fieldCount;
+		if (--count[fields+src] == 0) {
+			color[fields+src] = -1;
+		}
+		count[fields+dest]++;
+		color[fields+dest] = (byte) player;
+		position[base+piece] = (byte) newLocal;
+	}
+
+	/**
+	 * Passes the turn to the next seat, like Ludo's nextPlayer().
+	 */
+	void nextPlayer(int g) {
+		current[g] = (byte) (current[g] == seats-1 ? 0 : current[g]+1);
+	}
+
+	/**
+	 * Gets the current player's pieces at home, one bit per piece.
+	 */
+	int homeMask(int base) {
+		int mask = 0;
+		for (int i=0; i<4; i++) {
+			mask |= position[base+i] == 0 ? 1 << i : 0;
+		}
+		return mask;
+	}
+
+	/**
+	 * Gets the number of games in the batch.
+	 * @return Number of games
+	 */
+	public int games() {
+		return games;
+	}
+
+	/**
+	 * Gets the number of games that have a winner.
+	 * @return Number of finished games
+	 */
+	public int finished() {
+		return finished;
+	}
+
+	/**
+	 * Gets the local position of a piece in one of the games.
+	 * @param g The game
+	 * @param player Whose piece
+	 * @param piece Which piece (0-3)
+	 * @return The local position of the piece
+	 */
+	public int getLocalPosition(int g, int player, int piece) {
+		return position[(g*seats + player)*4 + piece];
+	}
+
+	/**
+	 * Gets the player whose turn it is in one of the games.
+	 * @param g The game
+	 * @return The current player
+	 */
+	public int getCurrentPlayer(int g) {
+		return current[g];
+	}
+
+	/**
+	 * Gets the current attempt number in one of the games.
+	 * @param g The game
+	 * @return Current attempt (-1 or 0-2)
+	 */
+	public int getAttempt(int g) {
+		return attempt[g];
+	}
+
+	/**
+	 * Gets whether the current player has an extra throw in one of the games.
+	 * @param g The game
+	 * @return Whether the current player has an extra throw
+	 */
+	public boolean getExtraThrow(int g) {
+		return extraThrow[g];
+	}
+
+	/**
+	 * Gets the winner of one of the games.
+	 * @param g The game
+	 * @return The winner, or -1 if the game is not won
+	 */
+	public int getWinner(int g) {
+		return winner[g];
+	}
+
+	/**
+	 * Gets the number of throws made in one of the games.
+	 * @param g The game
+	 * @return Number of throws
+	 */
+	public int getThrows(int g) {
+		return throwsMade[g];
+	}
+}
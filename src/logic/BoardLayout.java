@@ -0,0 +1,187 @@
+/**
+ * @author Johanne
+ */
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * The lookup tables describing a Ludo board, generated for any number of players and arm length.
+ * Global fields are laid out as in the standard game: first four home fields per player, then the
+ * shared ring, then each player's home stretch. All tables are flat int arrays indexed by
+ * player*width + field, so every variant runs through the same lookups.
+ */
+public final class BoardLayout {
+	public static final int PIECES = 4;	// Pieces per player, also the number of home fields per player
+
+	/**
+	 * The standard board: four players, 13 ring fields per player and 6 fields
+	 * in each home stretch, the last of which is the goal. 92 global fields in total.
+	 */
+	public static final BoardLayout STANDARD = new BoardLayout(4, 13, 6);
+
+	final int players;		// Number of player colors on the board
+	final int arm;			// Ring fields per player, the distance between two start fields
+	final int stretch;		// Fields in each home stretch, including the goal
+	final int ring;			// Fields in the shared ring
+	final int lap;			// Local field reached after a full lap, which is the start field again
+	final int goal;			// Local goal field, the last field of every path
+	final int pathLength;	// Local fields per player, home and goal included
+	final int fieldCount;	// Global fields on the board
+	final int ringBase;		// First global ring field, the start field of player 0
+	final int stretchBase;	// First global home stretch field
+
+	final int[] paths;		// Global field of each local field, indexed player*pathLength + local
+	final int[] locals;		// Local field of each global field or -1, indexed player*fieldCount + global
+	final int[] safeOwner;	// The player whose start (safe) field this global field is, or -1
+
+	/**
+	 * Generates the tables for a board.
+	 * @param players Number of players (2 or more)
+	 * @param arm Ring fields per player (1 or more)
+	 * @param stretch Fields in each home stretch, goal included (1 or more)
+	 */
+	public BoardLayout(int players, int arm, int stretch) {
+		if (players < 2 || arm < 1 || stretch < 1) {
+			throw new IllegalArgumentException("Invalid board: "+players+" players, arm "+arm
+					+", stretch "+stretch);
+		}
+		this.players = players;
+		this.arm = arm;
+		this.stretch = stretch;
+		ring = players*arm;
+		lap = ring+1;
+		goal = lap+stretch;
+		pathLength = goal+1;
+		ringBase = players*PIECES;
+		stretchBase = ringBase+ring;
+		fieldCount = stretchBase+players*stretch;
+
+		paths = new int[players*pathLength];
+		locals = new int[players*fieldCount];
+		safeOwner = new int[fieldCount];
+		Arrays.fill(locals, -1);
+		Arrays.fill(safeOwner, -1);
+
+		for (int pl=0; pl<players; pl++) {
+			int path = pl*pathLength;	// Start of this player's rows
+			int map = pl*fieldCount;
+
+			paths[path] = homeField(pl);	// Local 0: home
+			for (int pi=0; pi<PIECES; pi++) {
+				locals[map+homeField(pl)+pi] = 0;
+			}
+			for (int local=1; local<=lap; local++) {	// Locals 1 to lap: around the ring
+				int global = ringBase + (pl*arm + local-1) % ring;
+				paths[path+local] = global;
+				if (local < lap) {	// The start field maps back to 1; performMove() resolves the lap
+					locals[map+global] = local;
+				}
+			}
+			for (int i=0; i<stretch; i++) {	// Then the home stretch, ending in the goal
+				int global = stretchBase + pl*stretch + i;
+				paths[path+lap+1+i] = global;
+				locals[map+global] = lap+1+i;
+			}
+			safeOwner[startField(pl)] = pl;
+		}
+	}
+
+	/**
+	 * Gets the number of player colors on this board.
+	 * @return Number of players
+	 */
+	public int players() {
+		return players;
+	}
+
+	/**
+	 * Gets the number of global fields on this board.
+	 * @return Number of fields
+	 */
+	public int fieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * Gets the local field reached after a full lap, i.e. the start field seen from the end.
+	 * @return The lap field (53 on the standard board)
+	 */
+	public int lapField() {
+		return lap;
+	}
+
+	/**
+	 * Gets the local goal field, the last field of every player's path.
+	 * @return The goal field (59 on the standard board)
+	 */
+	public int goalLocal() {
+		return goal;
+	}
+
+	/**
+	 * Converts from player (local) positions to board (global) ones.
+	 * @param player The player
+	 * @param local The local field to convert (0 to goalLocal())
+	 * @return The global field that the local field translates to
+	 */
+	public int globalFromLocal(int player, int local) {
+		return paths[player*pathLength + local];
+	}
+
+	/**
+	 * Converts from board (global) positions to player (local) ones. The start field
+	 * converts to 1, never to lapField().
+	 * @param player The player
+	 * @param global The global field to convert
+	 * @return The local field, or -1 if the field is not on the player's path
+	 */
+	public int localFromGlobal(int player, int global) {
+		return locals[player*fieldCount + global];
+	}
+
+	/**
+	 * Gets the global home field where all of a player's pieces are kept.
+	 * @param player The player
+	 * @return The global home field
+	 */
+	public int homeField(int player) {
+		return player*PIECES;
+	}
+
+	/**
+	 * Gets whether the global field is one of the home fields.
+	 * @param global The global field
+	 * @return Whether the field is in a home area
+	 */
+	public boolean isHome(int global) {
+		return global < ringBase;
+	}
+
+	/**
+	 * Gets a player's start field, which is also that player's safe field.
+	 * @param player The player
+	 * @return The global start field
+	 */
+	public int startField(int player) {
+		return ringBase + player*arm;
+	}
+
+	/**
+	 * Gets the player whose safe field the given field is.
+	 * @param global The global field
+	 * @return The owning player, or -1 if the field is not a safe field
+	 */
+	public int safeOwner(int global) {
+		return safeOwner[global];
+	}
+
+	/**
+	 * Gets a player's global goal field.
+	 * @param player The player
+	 * @return The global goal field
+	 */
+	public int goalField(int player) {
+		return stretchBase + player*stretch + stretch-1;
+	}
+}
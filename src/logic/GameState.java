@@ -0,0 +1,193 @@
+/**
+ * @author Johanne
+ */
+package logic;
+
+import java.util.Arrays;
+
+/**
+ * A snapshot of a Ludo game: where every piece is and whose turn it is. A GameState never
+ * changes, so it can be handed to other threads while the game itself goes on.
+ */
+public class GameState implements GameView {
+	final BoardLayout layout;
+	final Rules rules;
+	final String[] playerName;
+	final int registered;
+	final int active;
+	final int[][] position;
+	final int currentPlayer;
+	final int attempt;
+	final boolean extraThrow;
+	final int winner;
+	final Ludo.Status status;
+	final byte[] count;	// Pieces on each global field
+	final byte[] color;	// Owner of each global field, or -1
+
+	/**
+	 * Takes a snapshot of a game.
+	 * @param ludo The game
+	 */
+	public GameState(Ludo ludo) {
+		layout = ludo.layout;
+		rules = ludo.rules;
+		playerName = ludo.playerName.clone();
+		registered = ludo.registered;
+		active = ludo.active;
+		position = new int[ludo.position.length][];
+		for (int pl=0; pl<position.length; pl++) {
+			position[pl] = ludo.position[pl].clone();
+		}
+		currentPlayer = ludo.currentPlayer;
+		attempt = ludo.attempt;
+		extraThrow = ludo.extraThrow;
+		winner = ludo.winner;
+		status = ludo.status;
+		count = new byte[ludo.fields.length];
+		color = new byte[ludo.fields.length];
+		for (int i=0; i<count.length; i++) {
+			count[i] = (byte) ludo.fields[i].noOfPieces();
+			color[i] = (byte) ludo.fields[i].color;
+		}
+	}
+
+	/**
+	 * Puts together a snapshot from its parts, such as a game saved by another process.
+	 * @param layout The board
+	 * @param rules The rules
+	 * @param names The players' names by seat, null for vacant seats
+	 * @param active The active players, one bit per player
+	 * @param position Each piece's local field, by player and piece number
+	 * @param currentPlayer The player whose turn it is
+	 * @param attempt The attempt number (-1 or 0-2)
+	 * @param extraThrow Whether the current player has an extra throw
+	 * @param winner The winner, or -1
+	 * @param status The status, as given by getStatus()
+	 * @throws IllegalArgumentException if the parts do not fit the board or the status is unknown
+	 */
+	public GameState(BoardLayout layout, Rules rules, String[] names, int active, int[][] position,
+			int currentPlayer, int attempt, boolean extraThrow, int winner, String status) {
+		if (names.length != layout.players() || position.length != layout.players()) {
+			throw new IllegalArgumentException("Players do not fit the board: "+names.length);
+		}
+		this.layout = layout;
+		this.rules = rules;
+		playerName = names.clone();
+		int seats = 0;
+		for (int pl=0; pl<names.length; pl++) {
+			seats |= names[pl] != null ? 1 << pl : 0;
+		}
+		registered = seats;
+		this.active = active & seats;
+		this.position = new int[position.length][];
+		count = new byte[layout.fieldCount()];
+		color = new byte[layout.fieldCount()];
+		Arrays.fill(color, (byte) -1);
+		for (int pl=0; pl<position.length; pl++) {
+			this.position[pl] = position[pl].clone();
+			for (int pi=0; pi<4; pi++) {
+				if (position[pl][pi] < 0 || position[pl][pi] > layout.goalLocal()) {
+					throw new IllegalArgumentException("Invalid position: "+position[pl][pi]);
+				}
+				if ((registered >> pl & 1) != 0) {	// Vacant seats have no pieces on the board
+					int global = layout.globalFromLocal(pl, position[pl][pi]);
+					count[global]++;
+					color[global] = (byte) pl;
+				}
+			}
+		}
+		this.currentPlayer = currentPlayer;
+		this.attempt = attempt;
+		this.extraThrow = extraThrow;
+		this.winner = winner;
+		this.status = Ludo.Status.valueOf(status);
+	}
+
+	@Override
+	public BoardLayout getLayout() {
+		return layout;
+	}
+
+	@Override
+	public int noOfPlayers() {
+		return Integer.bitCount(registered);
+	}
+
+	/**
+	 * Gets the name of the given player, as it was when the snapshot was taken.
+	 * @param player The player
+	 * @return The name of the player, or null if the seat was vacant
+	 */
+	@Override
+	public String getPlayerName(int player) {
+		return playerName[player];
+	}
+
+	/**
+	 * Gets whether the given player was active.
+	 * @param player The player
+	 * @return Whether the player was active
+	 */
+	@Override
+	public boolean isActive(int player) {
+		return (active >> player & 1) != 0;
+	}
+
+	@Override
+	public int getCurrentPlayer() {
+		return currentPlayer;
+	}
+
+	@Override
+	public int getLocalPosition(int player, int piece) {
+		return position[player][piece];
+	}
+
+	@Override
+	public int getPieceCount(int global) {
+		return count[global];
+	}
+
+	@Override
+	public int getFieldColor(int global) {
+		return color[global];
+	}
+
+	/**
+	 * Gets the attempt number.
+	 * @return Attempt (-1 or 0-2)
+	 */
+	public int getAttempt() {
+		return attempt;
+	}
+
+	/**
+	 * Gets whether the current player had an extra throw.
+	 * @return Whether the current player had an extra throw
+	 */
+	public boolean getExtraThrow() {
+		return extraThrow;
+	}
+
+	@Override
+	public int getWinner() {
+		return winner;
+	}
+
+	/**
+	 * Gets the rules the game was played by.
+	 * @return The rules
+	 */
+	@Override
+	public Rules getRules() {
+		return rules;
+	}
+
+	/**
+	 * Gets the status of the game.
+	 * @return The game status (CREATED, INITIATED, STARTED, FINISHED)
+	 */
+	public String getStatus() {
+		return status.name();
+	}
+}
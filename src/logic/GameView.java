@@ -0,0 +1,76 @@
+/**
+ * @author Johanne
+ */
+package logic;
+
+/**
+ * Read-only access to the state of a game, for strategies and other code that
+ * looks at a game without playing it.
+ */
+public interface GameView {
+	/**
+	 * Gets the board the game is played on.
+	 * @return The board layout
+	 */
+	BoardLayout getLayout();
+	
+	/**
+	 * Gets the rules the game is played by.
+	 * @return The rules
+	 */
+	Rules getRules();
+	
+	/**
+	 * Gets the number of registered players, active and inactive.
+	 * @return Number of players
+	 */
+	int noOfPlayers();
+	
+	/**
+	 * Gets the name of the given player.
+	 * @param player The player
+	 * @return The name of the player, or null if the seat is vacant
+	 */
+	String getPlayerName(int player);
+	
+	/**
+	 * Gets whether the given player is active, i.e. has joined and not left.
+	 * @param player The player
+	 * @return Whether the player is active
+	 */
+	boolean isActive(int player);
+	
+	/**
+	 * Gets the player whose turn it currently is.
+	 * @return The current player
+	 */
+	int getCurrentPlayer();
+	
+	/**
+	 * Gets the local position of the given piece.
+	 * @param player Whose piece
+	 * @param piece Which piece (0-3)
+	 * @return The local position of the piece
+	 */
+	int getLocalPosition(int player, int piece);
+	
+	/**
+	 * Gets the number of pieces on a global field.
+	 * @param global The global field
+	 * @return Number of pieces (0-4)
+	 */
+	int getPieceCount(int global);
+	
+	/**
+	 * Gets which player the pieces on a global field belong to.
+	 * @param global The global field
+	 * @return The player, or -1 if the field is empty
+	 */
+	int getFieldColor(int global);
+	
+	/**
+	 * Gets the player that won.
+	 * @return The winner, or -1 if the game is not won
+	 */
+	int getWinner();
+}
@@ -0,0 +1,34 @@
+/**
+ * @author Johanne
+ */
+package logic;
+
+/**
+ * Exception thrown when a turn given to Ludo.applyTurns() could not have been played:
+ * the dice is not 1-6, the game is already won, a piece is given that cannot be moved,
+ * or no piece is given when one must be moved.
+ */
+public class InvalidTurnException extends IllegalArgumentException {
+	private static final long serialVersionUID = 1L;
+	
+	final int turn;
+	
+	/**
+	 * Creates the exception for a turn.
+	 * @param turn The index of the turn
+	 * @param dice The dice of the turn
+	 * @param piece The piece of the turn, or -1
+	 */
+	public InvalidTurnException(int turn, int dice, int piece) {
+		super("Turn "+turn+" is not legal: "+dice+" "+piece);
+		this.turn = turn;
+	}
+	
+	/**
+	 * Gets the index of the turn that could not be played. The turns before it were applied.
+	 * @return The index of the turn
+	 */
+	public int getTurn() {
+		return turn;
+	}
+}
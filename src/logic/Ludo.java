@@ -5,24 +5,28 @@ package logic;
 
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * The Ludo logic class. This class handles the logical game: player turns, piece movement
  * and everything else related to the game mechanics.
  */
-public class Ludo {
+public class Ludo implements GameView {
 	// === PLAYERS ================================================================================= //
 	public static final int RED = 0;	// Constants representing player indices
 	public static final int BLUE = 1;
 	public static final int YELLOW = 2;
 	public static final int GREEN = 3;
 	
-	String[] playerName = new String[4];  // Players' display names
-	boolean[] playerStatus = new boolean[4]; // Players' status (active/inactive)
+	static final SecureRandom RANDOM = new SecureRandom();	// Seeding is slow, so every game shares one
+	
+	String[] playerName;  // Players' display names, null for vacant seats
+	int registered;	// Players that have joined, active and inactive; one bit per player
+	int active;		// Players' status (active/inactive); one bit per player
 
 	
 	// === FIELDS AND PIECES ======================================================================= //
-	int[][] position = new int[4][4]; // Each piece's current local field, by player and piece number
+	int[][] position; // Each piece's current local field, by player and piece number
 	
 	public static class Field {	// Each field can have 0-4 pieces on it, but only of one color at a time
 		boolean[] pieces; // Provides indices for pieces on this field; corresponds with player pieces
@@ -60,30 +64,32 @@ public class Ludo {
 		}
 	}
 	
-	Field[] fields;	// 92 global fields, instantiated by Ludo's constructors
+	Field[] fields;	// 92 global fields on the standard board, instantiated by Ludo's constructors
 	
-	/**
-	 * Map of global to local fields for each player.
-	 * Size 5*92; row index 4 contains the global fields.
-	 */
-	static final int[][] board = {
-			{0, 0, 0, 0, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 153, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40, 41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, 52, 54, 55, 56, 57, 58, 59, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1}, 
-			{-1, -1, -1, -1, 0, 0, 0, 0, -1, -1, -1, -1, -1, -1, -1, -1, 40, 41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, 52, 153, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, -1, -1, -1, -1, -1, -1, 54, 55, 56, 57, 58, 59, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1}, 
-			{-1, -1, -1, -1, -1, -1, -1, -1, 0, 0, 0, 0, -1, -1, -1, -1, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40, 41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, 52, 153, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 54, 55, 56, 57, 58, 59, -1, -1, -1, -1, -1, -1}, 
-			{-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 0, 0, 0, 0, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40, 41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, 52, 153, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 54, 55, 56, 57, 58, 59},
-			{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40, 41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, 52, 53, 54, 55, 56, 57, 58, 59, 60, 61, 62, 63, 64, 65, 66, 67, 68, 69, 70, 71, 72, 73, 74, 75, 76, 77, 78, 79, 80, 81, 82, 83, 84, 85, 86, 87, 88, 89, 90, 91} 
-		};
+	final BoardLayout layout;	// The generated path, safe field and goal tables
+	final Rules rules;			// The house rules, compiled into the three below
+	final int[] protectedOn;	// Players that cannot be knocked home on each global field
+	final int blockLimit;		// Pieces of one color that block other players
+	final int lastAttempt;		// The last of the attempts to roll 6
 	
-	/**
-	 * The global fields in order of each player's path from start to finish.
-	 * Size 4*60.
-	 */
-	static final int[][] paths = {
-			{0, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40, 41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, 52, 53, 54, 55, 56, 57, 58, 59, 60, 61, 62, 63, 64, 65, 66, 67, 16, 68, 69, 70, 71, 72, 73},
-			{4, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40, 41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, 52, 53, 54, 55, 56, 57, 58, 59, 60, 61, 62, 63, 64, 65, 66, 67, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 74, 75, 76, 77, 78, 79},
-			{8, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, 52, 53, 54, 55, 56, 57, 58, 59, 60, 61, 62, 63, 64, 65, 66, 67, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40, 41, 42, 80, 81, 82, 83, 84, 85},
-			{12, 55, 56, 57, 58, 59, 60, 61, 62, 63, 64, 65, 66, 67, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36, 37, 38, 39, 40, 41, 42, 43, 44, 45, 46, 47, 48, 49, 50, 51, 52, 53, 54, 55, 86, 87, 88, 89, 90, 91}
-		};
+	
+	// === METRICS ================================================================================= //
+	// Kept up to date by performMove(), so that bots and statistics need not scan the board.
+	// Vacant seats have no pieces on the board and count as zero everywhere.
+	int[] pips;			// Fields left to the goal for all of a player's pieces, by player
+	int[] atHome;		// Pieces at home, by player
+	int[] inGoal;		// Pieces in the goal, by player
+	int[] blockades;	// Ring fields where a player has a blockade, by player
+	int[] reach;		// Pieces that can reach a global field with one throw, indexed player*fieldCount + global
+	
+	
+	// === SPECULATION ============================================================================= //
+	// speculate() finds a player's movable pieces for all six dice ahead of the throw.
+	// The board version counts the changes to the pieces, so that an outdated speculation is ignored.
+	int boardVersion;
+	final int[] speculated = new int[6];	// movablePieces() of the speculated player, by dice-1
+	int speculatedPlayer = -1;
+	int speculatedVersion;
 	
 	
 	// === GAME STATES ============================================================================= //
@@ -92,7 +98,6 @@ public class Ludo {
 	boolean extraThrow = false; // True when rolling 6 on a normal turn,
 										// false when extra turn is over
 	int currentDice;		// The current dice
-	boolean checkOnly = false; // Whether movePiece() is called to just check or actually move
 	int winner = -1;	// Used to set and get the winner of the game
 	
 	/**
@@ -121,32 +126,292 @@ public class Ludo {
 	 * @throws NotEnoughPlayersException if fewer than two names are given
 	 */
 	public Ludo(String p1, String p2, String p3, String p4) {
-		String[] args = {p1, p2, p3, p4};
-		int j=0;					// Fills the first j slots of player[], playerStatus[] and
-		for (int i=0; i<4; i++) {	 // playerListeners[], vacant slots are at the end
-			if (args[i] != null) {
-				playerName[j] = args[i];
-				playerStatus[j] = true;
+		this(BoardLayout.STANDARD, p1, p2, p3, p4);
+	}
+	
+	/**
+	 * Creates an empty Ludo game on the standard board. Players join with addPlayer().
+	 */
+	public Ludo() {
+		this(BoardLayout.STANDARD);
+	}
+	
+	/**
+	 * Creates an empty Ludo game on the given board. Players join with addPlayer().
+	 * @param layout The board to play on, e.g. BoardLayout.STANDARD
+	 */
+	public Ludo(BoardLayout layout) {
+		this(layout, Rules.STANDARD);
+	}
+	
+	/**
+	 * Creates an empty Ludo game on the given board with the given rules.
+	 * Players join with addPlayer().
+	 * @param layout The board to play on, e.g. BoardLayout.STANDARD
+	 * @param rules The rules to play by, e.g. Rules.STANDARD
+	 */
+	public Ludo(BoardLayout layout, Rules rules) {
+		this.layout = layout;
+		this.rules = rules;
+		protectedOn = rules.protection(layout);
+		blockLimit = rules.blockLimit();
+		lastAttempt = rules.lastAttempt();
+		int players = layout.players();
+		playerName = new String[players];
+		position = new int[players][BoardLayout.PIECES];
+		
+		fields = new Field[layout.fieldCount()];
+		for (int i=0; i<fields.length; i++) {
+			fields[i] = new Field();
+		}
+		pips = new int[players];
+		atHome = new int[players];
+		inGoal = new int[players];
+		blockades = new int[players];
+		reach = new int[players*layout.fieldCount()];
+		status = Status.CREATED;
+	}
+	
+	/**
+	 * Creates a Ludo game on the given board. Called with at least two names and at most
+	 * one per player color; null names are skipped.
+	 * @param layout The board to play on, e.g. BoardLayout.STANDARD
+	 * @param names The names of the players
+	 * @throws NotEnoughPlayersException if fewer than two names are given
+	 * @throws NoRoomForMorePlayersException if there are more names than player colors
+	 */
+	public Ludo(BoardLayout layout, String... names) {
+		this(layout, Rules.STANDARD, names);
+	}
+	
+	/**
+	 * Creates a Ludo game on the given board with the given rules. Called with at least two
+	 * names and at most one per player color; null names are skipped.
+	 * @param layout The board to play on, e.g. BoardLayout.STANDARD
+	 * @param rules The rules to play by, e.g. Rules.STANDARD
+	 * @param names The names of the players
+	 * @throws NotEnoughPlayersException if fewer than two names are given
+	 * @throws NoRoomForMorePlayersException if there are more names than player colors
+	 */
+	public Ludo(BoardLayout layout, Rules rules, String... names) {
+		this(layout, rules);
+		seatAll(names);
+	}
+	
+	/**
+	 * Seats the players of a new game, in the first seats.
+	 * @param names The names of the players; null names are skipped
+	 * @throws NotEnoughPlayersException if fewer than two names are given
+	 * @throws NoRoomForMorePlayersException if there are more names than player colors
+	 */
+	void seatAll(String... names) {
+		if (names.length > layout.players()) {
+			throw new NoRoomForMorePlayersException();
+		}
+		
+		int j=0;							// Fills the first j seats,
+		for (int i=0; i<names.length; i++) {	 // vacant seats are at the end
+			if (names[i] != null) {
+				seat(j, names[i]);
 				j++;
 			}
 		}
 		if (j < 2) {
 			throw new NotEnoughPlayersException();
 		}
-		
-		fields = new Field[92];
-		for (int i=0; i<92; i++) {
-			fields[i] = new Field();
+		status = Status.INITIATED;
+	}
+	
+	/**
+	 * Starts a new game in this instance, on the same board with the same rules, as if it
+	 * had just been created: every field is emptied and every listener removed, but nothing
+	 * is allocated. Without names the game is empty and players join with addPlayer();
+	 * otherwise the names are seated as by the constructors.
+	 * @param names The names of the players, none or at least two; null names are skipped
+	 * @throws NotEnoughPlayersException if only one name is given
+	 * @throws NoRoomForMorePlayersException if there are more names than player colors
+	 */
+	public void reset(String... names) {
+		boardVersion++;
+		Arrays.fill(playerName, null);
+		registered = 0;
+		active = 0;
+		for (Field field : fields) {
+			if (field.color != -1) {	// Only fields with pieces on them need emptying
+				Arrays.fill(field.pieces, false);
+				field.color = -1;
+			}
 		}
-		
-		for (int pl=0; pl < noOfPlayers(); pl++) {
+		for (int pl=0; pl<position.length; pl++) {
+			Arrays.fill(position[pl], 0);
+			countMetrics(pl);
+		}
+		currentPlayer = 0;
+		attempt = -1;
+		extraThrow = false;
+		currentDice = 0;
+		winner = -1;
+		status = Status.CREATED;
+		diceListeners.clear();
+		pieceListeners.clear();
+		playerListeners.clear();
+		if (names.length > 0) {
+			seatAll(names);
+		}
+	}
+	
+	/**
+	 * Puts a new player in a vacant seat, with all pieces at home.
+	 * @param player The seat
+	 * @param name The player's name
+	 */
+	void seat(int player, String name) {
+		boardVersion++;
+		playerName[player] = name;
+		registered |= 1 << player;
+		active |= 1 << player;
+		for (int pi=0; pi<4; pi++) {
+			position[player][pi] = 0;
+			fields[layout.homeField(player)].pieces[pi] = true;
+		}
+		fields[layout.homeField(player)].color = player;
+		countMetrics(player);
+	}
+	
+	/**
+	 * Adds a player to the game. A name belonging to a player that has left rejoins that
+	 * player's seat, with the pieces where they were left; other names take the first
+	 * vacant seat. The game is initiated once two players have joined, and a paused game
+	 * goes on once two players are active again: the current player, or the next active
+	 * player if the current one has left, then gets PLAYING.
+	 * @param name The player's name
+	 * @return The player's seat (RED, BLUE, ...)
+	 * @throws IllegalArgumentException if the name is null
+	 * @throws NoRoomForMorePlayersException if every seat is taken
+	 */
+	public int addPlayer(String name) {
+		if (name == null) {
+			throw new IllegalArgumentException("A player must have a name");
+		}
+		boolean paused = (active & active-1) == 0;
+		int player = -1;
+		for (int i=0; i<playerName.length; i++) {	// Reconnecting players get their seat back
+			if (name.equals(playerName[i]) && !isActive(i)) {
+				player = i;
+				active |= 1 << player;
+				break;
+			}
+		}
+		if (player == -1) {
+			player = Integer.numberOfTrailingZeros(~registered);	// First vacant seat
+			if (player >= playerName.length) {
+				throw new NoRoomForMorePlayersException();
+			}
+			seat(player, name);
+		}
+		if (status == Status.CREATED && noOfPlayers() >= 2) {
+			status = Status.INITIATED;
+		}
+		for (PlayerListener pl : playerListeners) {	// Joins the game waiting for a turn
+			pl.playerStateChanged(new PlayerEvent(this, player, PlayerEvent.WAITING));
+		}
+		if (paused && (active & active-1) != 0 && winner == -1) {	// The turn goes on
+			if (isActive(currentPlayer)) {
+				for (PlayerListener pl : playerListeners) {
+					pl.playerStateChanged(new PlayerEvent(this, currentPlayer, PlayerEvent.PLAYING));
+				}
+			} else {
+				nextPlayer();
+			}
+		}
+		return player;
+	}
+	
+	/**
+	 * Makes a player inactive. The player keeps the seat and the pieces stay on the board,
+	 * so the player can rejoin with addPlayer(). If it was the player's turn,
+	 * the turn goes to the next active player. A started game left with fewer than two active
+	 * players is paused: it goes back to INITIATED, no player gets PLAYING, and the dice cannot
+	 * be thrown until another player joins or rejoins.
+	 * @param name The player's name
+	 * @return The player's seat, or -1 if no active player has that name
+	 */
+	public int removePlayer(String name) {
+		for (int player=0; player<playerName.length; player++) {
+			if (playerName[player] != null && playerName[player].equals(name) && isActive(player)) {
+				active &= ~(1 << player);
+				if ((active & active-1) == 0 && status == Status.STARTED) {	// Paused
+					status = Status.INITIATED;
+				}
+				for (PlayerListener pl : playerListeners) {
+					pl.playerStateChanged(new PlayerEvent(this, player, PlayerEvent.LEFT));
+				}
+				if (player == currentPlayer && active != 0) {	// The turn is over
+					attempt = -1;
+					extraThrow = false;
+					nextPlayer();
+				}
+				return player;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Puts the game back in the state of a snapshot, taken of this game or another game
+	 * on the same board. Listeners are not told about the pieces that moved, so whatever
+	 * shows the game must be redrawn from the restored positions.
+	 * @param state The snapshot
+	 * @throws IllegalArgumentException if the snapshot is of a game on another board or with other rules
+	 */
+	public void restore(GameState state) {
+		if (state.layout != layout || state.rules != rules) {
+			throw new IllegalArgumentException("The snapshot is of a game on another board or with other rules");
+		}
+		boardVersion++;
+		playerName = state.playerName.clone();
+		registered = state.registered;
+		active = state.active;
+		for (Field field : fields) {
+			Arrays.fill(field.pieces, false);
+			field.color = -1;
+		}
+		for (int pl=0; pl<position.length; pl++) {
 			for (int pi=0; pi<4; pi++) {
-				position[pl][pi] = 0;
-				fields[pl*4].pieces[pi] = true;
-				fields[pl*4].color = pl;
+				position[pl][pi] = state.position[pl][pi];
+				if ((registered >> pl & 1) != 0) {	// Vacant seats have no pieces on the board
+					Field field = fields[layout.globalFromLocal(pl, position[pl][pi])];
+					field.pieces[pi] = true;
+					field.color = pl;
+				}
 			}
 		}
-		status = Status.INITIATED;
+		for (int pl=0; pl<position.length; pl++) {
+			countMetrics(pl);
+		}
+		currentPlayer = state.currentPlayer;
+		attempt = state.attempt;
+		extraThrow = state.extraThrow;
+		winner = state.winner;
+		status = state.status;
+	}
+	
+	/**
+	 * Gets the board this game is played on.
+	 * @return The board layout
+	 */
+	@Override
+	public BoardLayout getLayout() {
+		return layout;
+	}
+	
+	/**
+	 * Gets the rules this game is played by.
+	 * @return The rules
+	 */
+	@Override
+	public Rules getRules() {
+		return rules;
 	}
 	
 	/**
@@ -157,6 +422,16 @@ public class Ludo {
 		return fields;
 	}
 	
+	@Override
+	public int getPieceCount(int global) {
+		return fields[global].noOfPieces();
+	}
+	
+	@Override
+	public int getFieldColor(int global) {
+		return fields[global].color;
+	}
+	
 	/**
 	 * Gets the status of the game.
 	 * @return The game status (Created, Initiated, Started, Finished)
@@ -169,14 +444,9 @@ public class Ludo {
 	 * Gets the number of registered players, active and inactive.
 	 * @return Number of players
 	 */
+	@Override
 	public int noOfPlayers() {
-		int j=0;
-		for (int i=0; i<4; i++) {
-			if (playerName[i] != null) {
-				j++;
-			}
-		}
-		return j;
+		return Integer.bitCount(registered);
 	}
 	
 	/**
@@ -184,13 +454,17 @@ public class Ludo {
 	 * @return Number of active players
 	 */
 	public int activePlayers() {
-		int j=0;
-		for (int i=0; i<4; i++) {
-			if (playerStatus[i]) {
-				j++;
-			}
-		}
-		return j;
+		return Integer.bitCount(active);
+	}
+	
+	/**
+	 * Gets whether the given player is active, i.e. has joined and not left.
+	 * @param player Player (RED, BLUE, YELLOW, GREEN)
+	 * @return Whether the player is active
+	 */
+	@Override
+	public boolean isActive(int player) {
+		return (active >> player & 1) != 0;
 	}
 	
 	/**
@@ -199,8 +473,9 @@ public class Ludo {
 	 * @param index Player (RED, BLUE, YELLOW, GREEN)
 	 * @return The name of the player, or null if the player does not exist
 	 */
+	@Override
 	public String getPlayerName(int index) {
-		if (!playerStatus[index] && playerName[index] != null) {
+		if (!isActive(index) && playerName[index] != null) {
 			return "Inactive: "+playerName[index];
 		}
 		return playerName[index];
@@ -210,8 +485,9 @@ public class Ludo {
 	 * Gets the local position of the given piece.
 	 * @param player Whose piece (RED, BLUE, YELLOW, GREEN)
 	 * @param piece Which piece (0-3)
-	 * @return The local position of the piece (0-53)
+	 * @return The local position of the piece (0-59 on the standard board)
 	 */
+	@Override
 	public int getLocalPosition(int player, int piece) {
 		return position[player][piece];
 	}
@@ -223,13 +499,14 @@ public class Ludo {
 	 * @return The global field that the local field translates to
 	 */
 	public int getGlobalFromLocal(int player, int local) {
-		return paths[player][local];
+		return layout.globalFromLocal(player, local);
 	}
 
 	/**
 	 * Gets the player whose turn it currently is.
 	 * @return The player whose turn it is (0-3)
 	 */
+	@Override
 	public int getCurrentPlayer() {
 		return currentPlayer;
 	}
@@ -254,10 +531,77 @@ public class Ludo {
 	 * Gets the player that won (0-3).
 	 * @return 0-3 if the game is won, -1 otherwise
 	 */
+	@Override
 	public int getWinner() {
 		return winner;
 	}
 	
+	/**
+	 * Gets the number of fields the player's pieces have left to the goal, counting
+	 * pieces at home from local field 0.
+	 * @param player The player (RED, BLUE, YELLOW, GREEN)
+	 * @return The pip count, 0 once every piece is in the goal
+	 */
+	public int getPips(int player) {
+		return pips[player];
+	}
+	
+	/**
+	 * Gets the number of the player's pieces at home.
+	 * @param player The player (RED, BLUE, YELLOW, GREEN)
+	 * @return Number of pieces (0-4)
+	 */
+	public int getPiecesAtHome(int player) {
+		return atHome[player];
+	}
+	
+	/**
+	 * Gets the number of the player's pieces in the goal.
+	 * @param player The player (RED, BLUE, YELLOW, GREEN)
+	 * @return Number of pieces (0-4)
+	 */
+	public int getPiecesInGoal(int player) {
+		return inGoal[player];
+	}
+	
+	/**
+	 * Gets the number of ring fields where the player has a blockade.
+	 * @param player The player (RED, BLUE, YELLOW, GREEN)
+	 * @return Number of blockades, always 0 when the rules have no blockades
+	 */
+	public int getBlockades(int player) {
+		return blockades[player];
+	}
+	
+	/**
+	 * Gets the number of the player's pieces that another player's piece on the ring could
+	 * knock home with a single throw: pieces one to six fields ahead of it, not on a field
+	 * where they are protected and not in a blockade. Other pieces in the way are not taken
+	 * into account.
+	 * @param player The player (RED, BLUE, YELLOW, GREEN)
+	 * @return Number of pieces (0-4)
+	 */
+	public int getExposedPieces(int player) {
+		int exposed = 0;
+		for (int pi=0; pi<4; pi++) {
+			int local = position[player][pi];
+			if (local == 0 || local > layout.lapField() || (registered >> player & 1) == 0) {
+				continue;	// Not on the ring
+			}
+			int global = layout.globalFromLocal(player, local);
+			if ((protectedOn[global] >> player & 1) != 0 || fields[global].noOfPieces() >= blockLimit) {
+				continue;
+			}
+			for (int pl=0; pl<layout.players(); pl++) {
+				if (pl != player && reach[pl*fields.length + global] > 0) {
+					exposed++;
+					break;
+				}
+			}
+		}
+		return exposed;
+	}
+	
 	/**
 	 * Adds a new listener to the list of DiceListeners.
 	 * @param dl An object that implements DiceListener
@@ -287,8 +631,7 @@ public class Ludo {
 	 * @return A random number (1-6)
 	 */
 	public int throwDice() {
-		SecureRandom random = new SecureRandom();
-		return random.nextInt(6)+1;
+		return RANDOM.nextInt(6)+1;
 	}
 	
 	/**
@@ -297,25 +640,29 @@ public class Ludo {
 	 * doesn't get more moves. This method controls turns and rerolls.
 	 * @param dice The number that was rolled (1-6)
 	 * @return dice The dice that was rolled
+	 * @throws NotEnoughPlayersException if fewer than two players are active
 	 */
 	public int throwDice(int dice) {
+		return throwDice(dice, -1);
+	}
+	
+	/**
+	 * Throws the dice, with the player's movable pieces already found if they are known.
+	 * @param dice The number that was rolled (1-6)
+	 * @param movable movablePieces() of the current player and the dice, or -1 to find them
+	 * @return dice The dice that was rolled
+	 */
+	int throwDice(int dice, int movable) {
+		if ((active & active-1) == 0) {	// Fewer than two active players: paused
+			throw new NotEnoughPlayersException();
+		}
 		int player = getCurrentPlayer();
 		
 		currentDice = dice;
 		status = Status.STARTED;
 		
-	  	int[] pos = new int[4];		// Current player's piece positions
-		boolean[] inGame = new boolean[4]; // Whether each piece is on the board (in the game)
-		
-		// Determine whether the player gets 3 rolls
-		for (int i=0; i<4; i++) {	// Go through the four pieces
-			pos[i] = getLocalPosition(player, i);
-			// True if piece is at home or goal, false if elsewhere on the board
-			inGame[i] = (pos[i] == 0 || pos[i] == 59);
-		}
-		
-		// The player gets 3 dice rolls
-		if (inGame[0] && inGame[1] && inGame[2] && inGame[3] && attempt == -1) {
+		// The player gets 3 dice rolls when every piece is at home or in the goal
+		if (atHome[player] + inGoal[player] == 4 && attempt == -1) {
 			attempt = 0;
 		}
 		
@@ -324,7 +671,7 @@ public class Ludo {
 		}
 
 		if (attempt > -1) {	// The player is on one of 3 attempts to roll 6
-			if (attempt < 2) {	// Non-final attempt
+			if (attempt < lastAttempt) {	// Non-final attempt
 				if (dice == 6) {// Guaranteed possible to move
 					attempt = -1;
 				} else {			// Impossible to move
@@ -338,155 +685,321 @@ public class Ludo {
 			}
 		} else if (extraThrow) { // The player is on an extra throw
 			extraThrow = false;
-			checkMoves(player, dice);
+			checkMoves(player, dice, movable < 0 ? movablePieces(player, dice) : movable);
 		} else {	// Standard throw
-			checkMoves(player, dice);
+			checkMoves(player, dice, movable < 0 ? movablePieces(player, dice) : movable);
 		}
 		return dice;
 	}
 	
 	/**
 	 * Checks whether a player has any available moves, given that they're on a standard throw,
-	 * i.e. has at least one piece on the board. This is done by setting the checkOnly flag
-	 * and calling movePiece() for all of the player's pieces that are on the board.
-	 * If the player has no moves, the turn goes to the next player.
+	 * i.e. has at least one piece on the board. The movable pieces are found by movablePieces(),
+	 * which does not change the game. If the player has no moves, the turn goes to the next player.
 	 * This is a helper method for throwDice().
 	 * @param player The current player
 	 * @param dice The dice that was thrown
 	 */
 	protected void checkMoves(int player, int dice) {
-	  	int[] pos = new int[4];		// The player's piece positions
-		boolean[] move = new boolean[4]; // Whether each piece can be moved with the given dice
-		
-		checkOnly = true;
-		// For each piece on the board, call movePiece() and get the return value
-		// If dice is 6, pieces at home can be moved out. The rest are set to false
-		for (int i=0; i<4; i++) {
-			pos[i] = getLocalPosition(player, i);
-			if (pos[i] != 0 && pos[i] != 59) {				
-				move[i] = movePiece(player, pos[i], pos[i]+dice); // Check if piece can be moved
-			} else if (pos[i] == 0 && dice == 6) { // This is a guaranteed possible move
-				move[i] = true;
-			} else {
-				move[i] = false;	// Impossible to move
-			}
+		checkMoves(player, dice, movablePieces(player, dice));
+	}
+	
+	/**
+	 * Passes the turn if the player has no moves, or tells the listeners which pieces can move.
+	 * @param player The current player
+	 * @param dice The dice that was thrown
+	 * @param mask The player's movable pieces, from movablePieces()
+	 */
+	void checkMoves(int player, int dice, int mask) {
+		// A 6 gives an extra throw to a player with pieces on the board, unless a piece is put out instead
+		if (dice == 6 && atHome[player] + inGoal[player] < 4) {
+			extraThrow = true;
 		}
-		
-		if (!move[0] && !move[1] && !move[2] && !move[3]) { // No moves available, next player
+		if (mask == 0) { // No moves available, next player
 			nextPlayer();
 		} else {	// Moves available, notify the controller which pieces
 			for (DiceListener dl : diceListeners) {
-				dl.movesChecked(new MovesCheckedEvent(player, move));
+				dl.movesChecked(new MovesCheckedEvent(player, mask));
 			}
 		}
-		checkOnly = false;
+	}
+	
+	/**
+	 * Finds the pieces a player could move with the given dice on a standard throw, without
+	 * changing the game. Pieces at home can be moved out with a 6; other pieces can be moved
+	 * if movePiece() would accept the move. Answered from speculate() if no piece has moved since.
+	 * @param player The player (RED, BLUE, YELLOW, GREEN)
+	 * @param dice The dice (1-6)
+	 * @return The movable pieces, one bit per piece
+	 */
+	public int movablePieces(int player, int dice) {
+		if (player == speculatedPlayer && speculatedVersion == boardVersion) {
+			return speculated[dice-1];	// Nothing has moved since speculate()
+		}
+		int goal = layout.goalLocal();
+		int mask = 0;
+		for (int i=0; i<4; i++) {
+			int pos = position[player][i];
+			if (pos == 0 ? dice == 6 : pos != goal && canMove(player, pos, pos+dice)) {
+				mask |= 1 << i;
+			}
+		}
+		return mask;
+	}
+	
+	/**
+	 * Finds the current player's movable pieces for each of the six dice the player may throw
+	 * next, so that the throw only has to look them up. Meant to be called while the game waits
+	 * for the player, after a throw or move has been handled. Moving any piece, restoring or
+	 * resetting the game makes the result outdated, and the throw then checks the moves itself.
+	 */
+	public void speculate() {
+		int player = currentPlayer;
+		if (winner != -1 || (registered >> player & 1) == 0) {
+			return;
+		}
+		int goal = layout.goalLocal();
+		Arrays.fill(speculated, 0);
+		for (int i=0; i<4; i++) {
+			int pos = position[player][i];
+			if (pos == 0) {
+				speculated[5] |= 1 << i;	// Put out with a 6
+				continue;
+			}
+			// One walk along the next six fields covers every dice: a blockade stops the piece for
+			// all higher dice, while a protected piece only rules out landing on its field
+			for (int d=1; d<=6 && pos+d <= goal; d++) {
+				int global = getGlobalFromLocal(player, pos+d);
+				int opponent = fields[global].color;
+				if (opponent != -1 && opponent != player) {
+					if (fields[global].noOfPieces() >= blockLimit) {
+						break;		// You shall not pass
+					}
+					if ((protectedOn[global] >> opponent & 1) != 0) {
+						continue;	// Can't land on a piece that sits on its safe field
+					}
+				}
+				speculated[d-1] |= 1 << i;
+			}
+		}
+		speculatedPlayer = player;
+		speculatedVersion = boardVersion;
+	}
+	
+	/**
+	 * Checks a move along the board: the destination must be within the goal, no other player
+	 * may block the way and a piece on the destination must not be protected there.
+	 * @param player RED, BLUE, YELLOW, GREEN
+	 * @param currentLocal Current local position
+	 * @param newLocal New local position
+	 * @return Whether the move is legal
+	 */
+	boolean canMove(int player, int currentLocal, int newLocal) {
+		if (newLocal > layout.goalLocal()) {	// Dice is too high to get to the finish
+			return false;
+		}
+		// Check for road blockages up ahead, the destination included
+		for (int tempLocal = currentLocal+1; tempLocal <= newLocal; tempLocal++) {
+			int tempGlobal = getGlobalFromLocal(player, tempLocal);
+			if (fields[tempGlobal].noOfPieces() >= blockLimit && fields[tempGlobal].color != player) {
+				return false;	// You shall not pass
+			}
+		}
+		// Another player's pieces can be knocked home unless they sit on a safe field
+		int newGlobal = getGlobalFromLocal(player, newLocal);
+		int opponent = fields[newGlobal].color;
+		return opponent == -1 || opponent == player || (protectedOn[newGlobal] >> opponent & 1) == 0;
+	}
+	
+	/**
+	 * Plays a run of turns in one call, as for a replay, an import or a server catching up.
+	 * Each turn is a throw of the dice and the piece the player then moved, like a throw and a
+	 * click in LudoController. Turns are checked before they are played; if one is invalid, the
+	 * turns before it stay played and the game is left where that turn would have started.
+	 * No listener is told about single throws and moves. With notify set, listeners are told
+	 * about the whole run at the end instead: each piece that ended up on another field gets
+	 * one PieceEvent from where it was to where it is, and then the winner gets WON or else the
+	 * current player gets PLAYING, unless the game is paused. DiceListeners are not told.
+	 * @param dice The dice of each turn (1-6)
+	 * @param pieces The piece moved in each turn (0-3), or -1 if no piece could be moved
+	 * @param from The first turn to play
+	 * @param to The turn after the last one to play
+	 * @param notify Whether to tell the listeners about the run
+	 * @throws InvalidTurnException if a turn could not have been played
+	 */
+	public void applyTurns(int[] dice, int[] pieces, int from, int to, boolean notify) {
+		if (dice.length != pieces.length || from < 0 || from > to || to > dice.length) {
+			throw new IndexOutOfBoundsException("No turns "+from+" to "+to+" in "+dice.length+" dice and "+pieces.length+" pieces");
+		}
+		ArrayList<DiceListener> dls = diceListeners;	// Silenced for the run
+		ArrayList<PieceListener> pls = pieceListeners;
+		ArrayList<PlayerListener> prls = playerListeners;
+		diceListeners = new ArrayList<>(0);
+		pieceListeners = new ArrayList<>(0);
+		playerListeners = new ArrayList<>(0);
+		int[][] before = null;
+		if (notify) {
+			before = new int[position.length][];
+			for (int pl=0; pl<position.length; pl++) {
+				before[pl] = position[pl].clone();
+			}
+		}
+		try {
+			for (int n=from; n<to; n++) {
+				int player = currentPlayer;
+				int d = dice[n];
+				int piece = pieces[n];
+				if (winner != -1 || (active & active-1) == 0 || d < 1 || d > 6) {
+					throw new InvalidTurnException(n, d, piece);
+				}
+				boolean attempting = attempt > -1 || atHome[player] + inGoal[player] == 4;	// Attempts to roll 6
+				int movable = attempting ? (d == 6 ? homePieces(player) : 0) : movablePieces(player, d);
+				if (movable == 0 ? piece != -1 : piece < 0 || piece > 3 || (movable >> piece & 1) == 0) {
+					throw new InvalidTurnException(n, d, piece);
+				}
+				throwDice(d, attempting ? -1 : movable);	// A 6 on an attempt moves a piece out
+				if (movable != 0) {
+					int pos = position[player][piece];
+					if (pos == 0) {		// Pieces at home are put out on the start field
+						movePiece(player, 0, 1);
+					} else {
+						movePiece(player, pos, pos+d);
+					}
+				}
+			}
+		} finally {
+			diceListeners = dls;
+			pieceListeners = pls;
+			playerListeners = prls;
+			if (notify) {
+				for (int pl=0; pl<position.length; pl++) {
+					for (int pi=0; pi<4; pi++) {
+						if (position[pl][pi] != before[pl][pi]) {
+							for (PieceListener pieceListener : pieceListeners) {
+								pieceListener.pieceMoved(new PieceEvent(this, pl, pi, before[pl][pi], position[pl][pi]));
+							}
+						}
+					}
+				}
+				if (winner != -1 || (active & active-1) != 0) {	// Nobody plays a paused game
+					for (PlayerListener pl : playerListeners) {
+						pl.playerStateChanged(winner != -1 ? new PlayerEvent(this, winner, PlayerEvent.WON)
+								: new PlayerEvent(this, currentPlayer, PlayerEvent.PLAYING));
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Plays a run of turns in one call. See applyTurns(int[], int[], int, int, boolean).
+	 * @param dice The dice of each turn (1-6)
+	 * @param pieces The piece moved in each turn (0-3), or -1 if no piece could be moved
+	 * @param notify Whether to tell the listeners about the run
+	 * @throws InvalidTurnException if a turn could not have been played
+	 */
+	public void applyTurns(int[] dice, int[] pieces, boolean notify) {
+		applyTurns(dice, pieces, 0, dice.length, notify);
+	}
+	
+	/**
+	 * Gets a player's pieces at home, one bit per piece.
+	 */
+	int homePieces(int player) {
+		int mask = 0;
+		for (int i=0; i<4; i++) {
+			if (position[player][i] == 0) {
+				mask |= 1 << i;
+			}
+		}
+		return mask;
+	}
+	
+	/**
+	 * Ends the current player's turn without a move, as when the player has no moves left:
+	 * an unused extra throw or attempt to roll 6 is lost and the turn goes to the next active
+	 * player. Used to skip players who take too long. Does nothing once the game is won.
+	 */
+	public void passTurn() {
+		if (winner != -1) {
+			return;
+		}
+		attempt = -1;
+		extraThrow = false;
+		nextPlayer();
 	}
 	
 	/**
 	 * Updates currentPlayer. Called at the end of each turn. 
-	 * If the game is not won, the turn goes to the next player.
+	 * If the game is not won, the turn goes to the next active player. The new player gets
+	 * PLAYING unless fewer than two players are active, as the game is then paused.
 	 */
 	protected void nextPlayer() {
 		for (PlayerListener pl : playerListeners) {					// Old player's turn is over
 			pl.playerStateChanged(new PlayerEvent(this, currentPlayer, PlayerEvent.WAITING));
 		}
-		do {
-			if (currentPlayer == noOfPlayers()-1) {
-				currentPlayer = 0;
-			} else {
-				currentPlayer++;
-			}
-		} while (!playerStatus[currentPlayer]);
+		if (active != 0) {
+			int later = active & -(2 << currentPlayer);	// Active players after the current one
+			currentPlayer = Integer.numberOfTrailingZeros(later != 0 ? later : active); // Or wrap around
+		}
 		
+		if ((active & active-1) == 0) {	// Paused: nobody plays until another player joins
+			return;
+		}
 		for (PlayerListener pl : playerListeners) {				// Now there is a new currentPlayer
 			pl.playerStateChanged(new PlayerEvent(this, currentPlayer, PlayerEvent.PLAYING));
 		}
 	}
 	
 	/**
-	 * Checks the given move, performs it if valid and checkOnly is false,
-	 * and returns whether it is valid. As the name implies, this method
-	 * controls piece movement.
+	 * Checks the given move, performs it if valid, and returns whether it is valid.
+	 * An invalid move ends the turn. As the name implies, this method controls piece movement.
 	 * @param player RED, BLUE, YELLOW, GREEN
 	 * @param currentLocal Current local position
 	 * @param newLocal New local position (usually current+dice)
 	 * @return Whether given move is legal
 	 */
 	public boolean movePiece(int player, int currentLocal, int newLocal) {
-		int currentGlobal = getGlobalFromLocal(player, currentLocal); // The global current field
-		int newGlobal; // The global destination field
-		int tempLocal = currentLocal; // For checking each field between current and destination
-		int tempGlobal;
-				
 		// Determine whether player gets an extra throw
 		if (currentDice == 6) { // Extra throw when this move is not putting out a new piece
 			extraThrow = (currentLocal == 0) ? false : true;
 		}
-				
-		// Dice is too high to get to the finish - invalid destination
-		if (newLocal > 59) {
-			if (!checkOnly) {
-				nextPlayer();
-			}
-			return false;
-		} else {	// The destination is within bounds, so we can convert it to global
-			newGlobal = getGlobalFromLocal(player, newLocal);
-		}
 		
-		// Check for road blockages up ahead
-		while (tempLocal < newLocal) {
-			tempLocal++;	// Increment the local position, then convert that to global
-			// Because we increment first, will also check for blockages at the destination
-			tempGlobal = getGlobalFromLocal(player, tempLocal);
-			if (fields[tempGlobal].noOfPieces() > 1 && fields[tempGlobal].color != player) {
-				if (!checkOnly) {
-					nextPlayer();
-				}
-				return false;	// You shall not pass
-			}
+		if (!canMove(player, currentLocal, newLocal)) {
+			nextPlayer();
+			return false;
 		}
+		int currentGlobal = getGlobalFromLocal(player, currentLocal); // The global current field
+		int newGlobal = getGlobalFromLocal(player, newLocal); // The global destination field
 		
-		// There is another player's piece at the destination
-		if (fields[newGlobal].noOfPieces() == 1 && fields[newGlobal].color != player) {
+		// There is another player's piece at the destination; more than one only without blockades
+		if (fields[newGlobal].noOfPieces() > 0 && fields[newGlobal].color != player) {
 			int opponent = fields[newGlobal].color;
-			// The destination is not the opponent's safe field
-			if (newGlobal != 16+opponent*13) {
-				if (!checkOnly) {
-					// Knock the existing piece home
-					performMove(board[opponent][newGlobal], newGlobal, opponent*4);
-					// Move my piece to the destination
-					performMove(currentLocal, currentGlobal, newGlobal);
-					if (!extraThrow) {
-						nextPlayer();
-					}
-				}
-				return true;
-			} else {	// Can't land on a piece that sits on its safe field
-				if (!checkOnly) {
-					nextPlayer();
-				}
-				return false;
+			// Knock the existing pieces home
+			for (int n=fields[newGlobal].noOfPieces(); n>0; n--) {
+				int piece = fields[newGlobal].getPiece();
+				performMove(position[opponent][piece], newGlobal, layout.homeField(opponent));
+			}
+			// Move my piece to the destination
+			performMove(currentLocal, currentGlobal, newGlobal);
+			if (!extraThrow) {
+				nextPlayer();
 			}
-		} else if (newLocal == 59 && fields[73+player*6].noOfPieces() == 3) {
+		} else if (newLocal == layout.goalLocal() && fields[layout.goalField(player)].noOfPieces() == 3) {
 			// Winning move. The game is finished here!
-			if (!checkOnly) {
-				performMove(currentLocal, currentGlobal, newGlobal);
-				winner = player;
-				for (PlayerListener pl : playerListeners) {
-					pl.playerStateChanged(new PlayerEvent(this, winner, PlayerEvent.WON));
-				}
-				status = Status.FINISHED;
+			performMove(currentLocal, currentGlobal, newGlobal);
+			winner = player;
+			for (PlayerListener pl : playerListeners) {
+				pl.playerStateChanged(new PlayerEvent(this, winner, PlayerEvent.WON));
 			}
-			return true;
+			status = Status.FINISHED;
 		} else { // Standard - the destination is vacant
-			if (!checkOnly) {
-				performMove(currentLocal, currentGlobal, newGlobal);
-				if (!extraThrow) {
-					nextPlayer();
-				}
+			performMove(currentLocal, currentGlobal, newGlobal);
+			if (!extraThrow) {
+				nextPlayer();
 			}
-			return true;
 		}
+		return true;
 	}
 	
 	/**
@@ -496,14 +1009,19 @@ public class Ludo {
 	 * @param newGlobal New global position
 	 */
 	protected void performMove(int currentLocal, int currentGlobal, int newGlobal) {
+		boardVersion++;
 		int player = fields[currentGlobal].color;
 		int piece = fields[currentGlobal].getPiece();
-		int newLocal = board[player][newGlobal];
+		int newLocal = layout.localFromGlobal(player, newGlobal);
 		
-		if (newLocal == 153) {		// Disambiguate the field 1/53
-			newLocal = (currentGlobal < 16) ? 1 : 53;	// 1 if moving out from home
+		if (newLocal == 1 && !layout.isHome(currentGlobal)) {	// Disambiguate the field 1/53
+			newLocal = layout.lapField();	// 1 only if moving out from home
 		}
 		
+		int oldLocal = position[player][piece];		// The same field as currentLocal, but not always the same number
+		if (onRing(oldLocal) && fields[currentGlobal].noOfPieces() == blockLimit) {
+			blockades[player]--;					// The blockade is broken up
+		}
 		fields[currentGlobal].pieces[piece] = false;	// Remove from old field
 		if (fields[currentGlobal].noOfPieces() == 0) {	// This was the last piece on the old field
 			fields[currentGlobal].color = -1;			// Reset color
@@ -511,9 +1029,70 @@ public class Ludo {
 		fields[newGlobal].pieces[piece] = true;		// Add to new field
 		fields[newGlobal].color = player;			// Set color even if already set
 		position[player][piece] = newLocal;			// Overwrite position
+		if (onRing(newLocal) && fields[newGlobal].noOfPieces() == blockLimit) {
+			blockades[player]++;
+		}
+		
+		pips[player] += oldLocal - newLocal;
+		atHome[player] += (newLocal == 0 ? 1 : 0) - (oldLocal == 0 ? 1 : 0);
+		inGoal[player] += (newLocal == layout.goalLocal() ? 1 : 0) - (oldLocal == layout.goalLocal() ? 1 : 0);
+		addReach(player, oldLocal, -1);
+		addReach(player, newLocal, 1);
 		
 		for (PieceListener pl : pieceListeners) {
 			pl.pieceMoved(new PieceEvent(this, player, piece, currentLocal, newLocal));
 		}
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Gets whether a local field is on the ring, where pieces can block and be knocked home.
+	 */
+	boolean onRing(int local) {
+		return local > 0 && local <= layout.lapField();
+	}
+	
+	/**
+	 * Adds to or takes from the reach of the fields a piece can move to with one throw
+	 * along the ring. A piece on the lap field has nowhere left to go on the ring.
+	 * @param player The piece's player
+	 * @param local The piece's local field
+	 * @param n 1 to add the piece, -1 to take it away
+	 */
+	void addReach(int player, int local, int n) {
+		if (local == 0) {
+			return;
+		}
+		int row = player*fields.length;
+		for (int ahead = local+1; ahead <= Math.min(local+6, layout.lapField()); ahead++) {
+			reach[row + layout.globalFromLocal(player, ahead)] += n;
+		}
+	}
+	
+	/**
+	 * Counts a player's metrics from scratch, from the positions of the pieces.
+	 * Used when pieces are put on the board without performMove().
+	 * @param player The player
+	 */
+	void countMetrics(int player) {
+		pips[player] = 0;
+		atHome[player] = 0;
+		inGoal[player] = 0;
+		blockades[player] = 0;
+		Arrays.fill(reach, player*fields.length, (player+1)*fields.length, 0);
+		if ((registered >> player & 1) == 0) {
+			return;		// Vacant seats have no pieces on the board
+		}
+		for (int pi=0; pi<4; pi++) {
+			int local = position[player][pi];
+			int global = layout.globalFromLocal(player, local);
+			pips[player] += layout.goalLocal() - local;
+			atHome[player] += local == 0 ? 1 : 0;
+			inGoal[player] += local == layout.goalLocal() ? 1 : 0;
+			addReach(player, local, 1);
+			// Counts each blockade once, at its first piece
+			if (onRing(local) && fields[global].noOfPieces() >= blockLimit && fields[global].getPiece() == pi) {
+				blockades[player]++;
+			}
+		}
+	}
+}
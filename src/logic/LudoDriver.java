@@ -0,0 +1,93 @@
+/**
+ * @author Johanne
+ */
+package logic;
+
+/**
+ * Plays a Ludo game without a GUI, the same way LudoController does: throw the dice, then
+ * click one of the movable pieces. Used by simulations and bots.
+ */
+public class LudoDriver implements DiceListener {
+	final Ludo ludo;
+	int movable;	// Movable pieces after the last throw, one bit per piece
+	boolean attemptThrow;	// Whether the last throw was one of the three attempts to roll 6
+
+	/**
+	 * Creates a driver for the given game and registers it as a DiceListener.
+	 * @param ludo The game to play
+	 */
+	public LudoDriver(Ludo ludo) {
+		this.ludo = ludo;
+		ludo.addDiceListener(this);
+	}
+
+	/**
+	 * Gets the game being played.
+	 * @return The Ludo game
+	 */
+	public Ludo getGame() {
+		return ludo;
+	}
+
+	/**
+	 * Throws the given dice for the current player.
+	 * @param dice The dice (1-6)
+	 * @return The pieces the player must choose from, one bit per piece,
+	 * or 0 if the turn goes on without a move
+	 */
+	public int roll(int dice) {
+		int player = ludo.getCurrentPlayer();
+		movable = 0;
+		ludo.throwDice(dice);
+
+		// A 6 on one of the three attempts moves a piece out; Ludo leaves that to the controller
+		if (movable == 0 && attemptThrow && dice == 6 && ludo.getCurrentPlayer() == player) {
+			for (int i=0; i<4; i++) {
+				if (ludo.getLocalPosition(player, i) == 0) {
+					movable |= 1 << i;
+				}
+			}
+		}
+		return movable;
+	}
+
+	/**
+	 * Moves one of the current player's pieces with the last thrown dice,
+	 * like clicking the piece in the GUI. Must be one of the pieces returned by roll().
+	 * @param piece The piece to move (0-3)
+	 */
+	public void move(int piece) {
+		int player = ludo.getCurrentPlayer();
+		int pos = ludo.getLocalPosition(player, piece);
+		movable = 0;
+		if (pos == 0) {		// Pieces at home are put out on the start field
+			ludo.movePiece(player, 0, 1);
+		} else {
+			ludo.movePiece(player, pos, pos+ludo.currentDice);
+		}
+	}
+
+	/**
+	 * Picks one of the movable pieces by rank, so that the same choice can be replayed
+	 * on any engine: rank 0 is the lowest movable piece, 1 the next and so on.
+	 * @param movable The movable pieces, one bit per piece (not 0)
+	 * @param rank Which of the movable pieces to pick, wrapping around
+	 * @return The piece (0-3)
+	 */
+	public static int pick(int movable, int rank) {
+		for (int i = rank % Integer.bitCount(movable); i > 0; i--) {
+			movable &= movable-1;	// Drop the lowest movable piece
+		}
+		return Integer.numberOfTrailingZeros(movable);
+	}
+
+	@Override
+	public void diceThrown(DiceEvent event) {
+		attemptThrow = ludo.getAttempt() > -1;	// Read the same way LudoController does
+	}
+
+	@Override
+	public void movesChecked(MovesCheckedEvent event) {
+		movable = event.getMovableMask();
+	}
+}
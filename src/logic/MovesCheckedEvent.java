@@ -23,6 +23,18 @@ public class MovesCheckedEvent {
 		}
 	}
 	
+	/**
+	 * MovesCheckedEvents are created by checkMoves(), which is called by throwDice().
+	 * @param player The player that rolled the dice (current active player)
+	 * @param movableMask The movable pieces, one bit per piece
+	 */
+	public MovesCheckedEvent(int player, int movableMask) {
+		this.player = player;
+		for (int i=0; i<movable.length; i++) {
+			movable[i] = (movableMask >> i & 1) != 0;
+		}
+	}
+	
 	/**
 	 * Gets the player that rolled the dice (current active player)
 	 * @return The player that rolled the dice
@@ -38,4 +50,18 @@ public class MovesCheckedEvent {
 	public boolean[] getMovable() {
 		return movable;
 	}
+	
+	/**
+	 * Gets the movable pieces as a bit mask, bit i set if piece i can be moved
+	 * @return The movable pieces, one bit per piece
+	 */
+	public int getMovableMask() {
+		int mask = 0;
+		for (int i=0; i<movable.length; i++) {
+			if (movable[i]) {
+				mask |= 1 << i;
+			}
+		}
+		return mask;
+	}
 }
\ No newline at end of file
@@ -5,7 +5,8 @@ package logic;
 
 /**
  * Exception thrown when Ludo's constructor is called with fewer than two players,
- * but not the empty constructor.
+ * but not the empty constructor, and when the dice are thrown in a game with fewer than
+ * two active players.
  */
 public class NotEnoughPlayersException extends RuntimeException {
 	private static final long serialVersionUID = 1L;
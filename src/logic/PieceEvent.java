@@ -46,6 +46,14 @@ public class PieceEvent {
 		return piece;
 	}
 	
+	/**
+	 * Gets the position the move was made from, as passed to movePiece().
+	 * @return The local position before the move
+	 */
+	public int getCurrentPos() {
+		return currentPos;
+	}
+	
 	/**
 	 * Gets the piece's position after the move
 	 * @return The piece's new local position
@@ -12,9 +12,10 @@ public class PlayerEvent {
 	Ludo game;
 	int player;
 	int state;
-	static final int WAITING = 0;
-	static final int PLAYING = 1;
-	static final int WON = 2;
+	public static final int WAITING = 0;
+	public static final int PLAYING = 1;
+	public static final int WON = 2;
+	public static final int LEFT = 3;
 	
 	/**
 	 * PlayerEvents for changing turns are created in Ludo's nextPlayer(), one for the player
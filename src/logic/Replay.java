@@ -0,0 +1,165 @@
+/**
+ * @author Johanne
+ */
+package logic;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Steps through a recorded game. The game is played through once when the replay is created,
+ * keeping a snapshot of it every interval turns, so seeking to any turn restores the nearest
+ * snapshot before it and plays at most interval-1 turns from there.
+ *
+ * Replay files are text: the first line holds the players' names separated by tabs, then
+ * each line holds one turn, the dice thrown and the piece moved, or just the dice if no
+ * piece was moved. Lines starting with # are ignored.
+ */
+public class Replay {
+	public static final int DEFAULT_INTERVAL = 32;	// Turns between snapshots
+
+	final String[] names;
+	final int[] dice;
+	final int[] pieces;		// The piece moved in each turn, or -1
+	final int interval;
+	final GameState[] keyframes;	// keyframes[k] is the game before turn k*interval
+	final Ludo ludo;
+	int turn;				// Turns played by the game so far
+
+	/**
+	 * Creates a replay and checks that every recorded turn is legal.
+	 * @param names The names of the players
+	 * @param dice The dice of each turn (1-6)
+	 * @param pieces The piece moved in each turn (0-3), or -1 if none was moved
+	 * @param interval Turns between snapshots
+	 * @throws IllegalArgumentException if a turn could not have been played
+	 */
+	public Replay(String[] names, int[] dice, int[] pieces, int interval) {
+		if (dice.length != pieces.length || interval < 1) {
+			throw new IllegalArgumentException("Dice and pieces differ in length, or no interval");
+		}
+		this.names = names.clone();
+		this.dice = dice.clone();
+		this.pieces = pieces.clone();
+		this.interval = interval;
+		ludo = new Ludo(BoardLayout.STANDARD, names);
+		keyframes = new GameState[dice.length/interval + 1];
+		for (int k=0; k<keyframes.length; k++) {	// Also checks every turn
+			keyframes[k] = new GameState(ludo);
+			ludo.applyTurns(dice, pieces, k*interval, Math.min((k+1)*interval, dice.length), false);
+		}
+		turn = dice.length;
+	}
+
+	/**
+	 * Brings the game to the state after the given number of turns.
+	 * @param target Turns to have played (0 to getTurns())
+	 */
+	public void seek(int target) {
+		if (target < 0 || target > dice.length) {
+			throw new IndexOutOfBoundsException("No turn "+target+" in a replay of "+dice.length);
+		}
+		if (target < turn || target/interval > turn/interval) {	// Jump to the nearest keyframe
+			ludo.restore(keyframes[target/interval]);
+			turn = target/interval * interval;
+		}
+		ludo.applyTurns(dice, pieces, turn, target, false);
+		turn = target;
+	}
+
+	/**
+	 * Gets the game being replayed, at the turn last sought.
+	 * @return The game
+	 */
+	public Ludo getGame() {
+		return ludo;
+	}
+
+	/**
+	 * Gets the number of turns played so far.
+	 * @return The turn
+	 */
+	public int getTurn() {
+		return turn;
+	}
+
+	/**
+	 * Gets the number of turns recorded.
+	 * @return Number of turns
+	 */
+	public int getTurns() {
+		return dice.length;
+	}
+
+	/**
+	 * Gets the dice of a recorded turn.
+	 * @param n The turn
+	 * @return The dice (1-6)
+	 */
+	public int getDice(int n) {
+		return dice[n];
+	}
+
+	/**
+	 * Reads a replay file.
+	 * @param file The file
+	 * @param interval Turns between snapshots
+	 * @return The replay
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if the file is not a legal game
+	 */
+	public static Replay load(Path file, int interval) throws IOException {
+		try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String[] names = null;
+			int[] dice = new int[256];
+			int[] pieces = new int[256];
+			int n = 0;
+			for (String line; (line = in.readLine()) != null; ) {
+				if (line.startsWith("#") || line.trim().isEmpty()) {
+					continue;
+				}
+				if (names == null) {
+					names = line.split("\t");
+					continue;
+				}
+				String[] turn = line.trim().split("\\s+");
+				if (n == dice.length) {
+					dice = Arrays.copyOf(dice, n*2);
+					pieces = Arrays.copyOf(pieces, n*2);
+				}
+				dice[n] = Integer.parseInt(turn[0]);
+				pieces[n] = turn.length > 1 ? Integer.parseInt(turn[1]) : -1;
+				n++;
+			}
+			if (names == null) {
+				throw new IllegalArgumentException("Not a replay: "+file);
+			}
+			return new Replay(names, Arrays.copyOf(dice, n), Arrays.copyOf(pieces, n), interval);
+		}
+	}
+
+	/**
+	 * Writes a game as a replay file.
+	 * @param file The file
+	 * @param names The names of the players
+	 * @param dice The dice of each turn (1-6)
+	 * @param pieces The piece moved in each turn (0-3), or -1 if none was moved
+	 * @param turns Number of turns to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void save(Path file, String[] names, int[] dice, int[] pieces, int turns) throws IOException {
+		try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			out.write(String.join("\t", names));
+			out.newLine();
+			for (int n=0; n<turns; n++) {
+				out.write(pieces[n] < 0 ? Integer.toString(dice[n]) : dice[n]+" "+pieces[n]);
+				out.newLine();
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ * @author Johanne
+ */
+package logic;
+
+/**
+ * A set of house rules. Ludo and BatchEngine do not test these flags while playing; the rules
+ * are compiled into a table of which players are protected on each field, the number of pieces
+ * that form a blockade and the last of the attempts to roll a 6, so every variant runs through
+ * the same lookups as the standard game.
+ */
+public final class Rules {
+	/**
+	 * The standard rules: a single piece is safe on its own start field only, a player with no
+	 * pieces in play gets three attempts to roll a 6, and two or more pieces form a blockade.
+	 */
+	public static final Rules STANDARD = new Rules(false, false, true, true);
+
+	final boolean captureOnSafeFields;
+	final boolean startFieldsSafe;
+	final boolean threeAttempts;
+	final boolean blockades;
+
+	/**
+	 * Creates a set of rules.
+	 * @param captureOnSafeFields Whether pieces can also be knocked home on their own start field
+	 * @param startFieldsSafe Whether pieces on any start field are safe, not only on their own;
+	 * takes precedence over captureOnSafeFields
+	 * @param threeAttempts Whether a player with no pieces in play gets three attempts to roll a 6,
+	 * instead of one
+	 * @param blockades Whether two or more pieces of one color block other players; without them,
+	 * the pieces can be passed, and a piece landing on them knocks them all home
+	 */
+	public Rules(boolean captureOnSafeFields, boolean startFieldsSafe, boolean threeAttempts,
+			boolean blockades) {
+		this.captureOnSafeFields = captureOnSafeFields;
+		this.startFieldsSafe = startFieldsSafe;
+		this.threeAttempts = threeAttempts;
+		this.blockades = blockades;
+	}
+
+	/**
+	 * Compiles the rules about safe fields for a board.
+	 * @param layout The board
+	 * @return The players that cannot be knocked home on each global field, one bit per player
+	 */
+	int[] protection(BoardLayout layout) {
+		int[] protectedOn = new int[layout.fieldCount()];
+		for (int pl=0; pl<layout.players(); pl++) {
+			if (startFieldsSafe) {
+				protectedOn[layout.startField(pl)] = -1;	// Every player
+			} else if (!captureOnSafeFields) {
+				protectedOn[layout.startField(pl)] = 1 << pl;
+			}
+		}
+		return protectedOn;
+	}
+
+	/**
+	 * Gets the number of pieces of one color that block other players.
+	 * @return The blockade size, or Integer.MAX_VALUE if there are no blockades
+	 */
+	public int blockLimit() {
+		return blockades ? 2 : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Gets the last attempt to roll a 6 for a player with no pieces in play.
+	 * @return The attempt (0-2)
+	 */
+	public int lastAttempt() {
+		return threeAttempts ? 2 : 0;
+	}
+
+	/**
+	 * Packs the rules into four bits, for storing them.
+	 * @return captureOnSafeFields (bit 3), startFieldsSafe (bit 2), threeAttempts (bit 1)
+	 * and blockades (bit 0)
+	 */
+	public int toBits() {
+		return (captureOnSafeFields ? 8 : 0) | (startFieldsSafe ? 4 : 0) | (threeAttempts ? 2 : 0)
+				| (blockades ? 1 : 0);
+	}
+
+	/**
+	 * Unpacks rules packed by toBits().
+	 * @param bits The packed rules
+	 * @return The rules; STANDARD itself for the standard rules
+	 */
+	public static Rules fromBits(int bits) {
+		if ((bits & 0xF) == STANDARD.toBits()) {
+			return STANDARD;
+		}
+		return new Rules((bits & 8) != 0, (bits & 4) != 0, (bits & 2) != 0, (bits & 1) != 0);
+	}
+
+	@Override
+	public String toString() {
+		return (captureOnSafeFields ? "capture on safe fields, " : "")
+				+ (startFieldsSafe ? "all start fields safe, " : "")
+				+ (threeAttempts ? "three attempts" : "one attempt")
+				+ (blockades ? ", blockades" : ", no blockades");
+	}
+}
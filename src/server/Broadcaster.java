@@ -0,0 +1,157 @@
+/**
+ * @author Johanne
+ */
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Sends a game to its spectators. After each throw or move, publish() commits the game's
+ * GameSync and encodes the change once, as a delta frame in a read-only buffer that every
+ * spectator's queue shares; a spectator's connection only gets its own view of the bytes.
+ * Each spectator has a bounded queue. A spectator too slow to keep up is not given more
+ * memory: its queue is emptied and it gets the game's snapshot instead, which replaces
+ * everything it missed, and deltas again from there.
+ *
+ * publish() must be called on the thread playing the game, like GameSync.commit().
+ * Spectators join, leave and take frames from any thread.
+ */
+public class Broadcaster {
+	final GameSync sync;
+	final int capacity;
+	final CopyOnWriteArrayList<Spectator> spectators = new CopyOnWriteArrayList<>();
+	int published;			// The version last published
+	ByteBuffer snapshot;	// The snapshot of the published version, once a spectator needs it
+	long frames;
+	long resyncs;
+
+	/**
+	 * Creates a broadcaster for a game.
+	 * @param sync The game's sync, which the broadcaster commits
+	 * @param capacity Frames each spectator can fall behind before it is sent a snapshot instead
+	 */
+	public Broadcaster(GameSync sync, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Invalid capacity: "+capacity);
+		}
+		this.sync = sync;
+		this.capacity = capacity;
+		published = sync.getVersion();
+	}
+
+	/**
+	 * Adds a spectator. Its first frame is a snapshot, sent on the next publish().
+	 * @return The spectator
+	 */
+	public Spectator join() {
+		Spectator spectator = new Spectator(capacity);
+		spectators.add(spectator);
+		return spectator;
+	}
+
+	/**
+	 * Commits the game and sends what changed to every spectator. Call after each throw or move.
+	 * @return The version published
+	 */
+	public int publish() {
+		int version = sync.commit();
+		ByteBuffer delta = null;
+		if (version != published) {
+			delta = ByteBuffer.wrap(sync.delta(published)).asReadOnlyBuffer();	// Encoded once for everyone
+			frames++;
+		}
+		published = version;
+		snapshot = null;
+		for (Spectator spectator : spectators) {
+			if (spectator.resync || delta != null && !spectator.queue.offer(delta)) {
+				spectator.queue.clear();	// The snapshot replaces every frame missed
+				spectator.resync = false;
+				spectator.queue.offer(snapshot());
+				resyncs++;
+			}
+		}
+		return version;
+	}
+
+	/**
+	 * Gets the snapshot of the published version, encoding it once however many spectators need it.
+	 */
+	ByteBuffer snapshot() {
+		if (snapshot == null) {
+			snapshot = ByteBuffer.wrap(sync.snapshot()).asReadOnlyBuffer();
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Gets the number of spectators.
+	 * @return Number of spectators
+	 */
+	public int getSpectators() {
+		return spectators.size();
+	}
+
+	/**
+	 * Gets the number of delta frames encoded.
+	 * @return Number of frames
+	 */
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * Gets the number of snapshots sent, to spectators joining or falling behind.
+	 * @return Number of snapshots
+	 */
+	public long getResyncs() {
+		return resyncs;
+	}
+
+	/**
+	 * A spectator's queue of frames, in the order they are to be sent.
+	 */
+	public class Spectator {
+		final ArrayBlockingQueue<ByteBuffer> queue;
+		volatile boolean resync = true;	// Whether the next publish() sends a snapshot
+
+		Spectator(int capacity) {
+			queue = new ArrayBlockingQueue<>(capacity);
+		}
+
+		/**
+		 * Takes the next frame, if there is one.
+		 * @return The frame, a view of the shared bytes of its own to send, or null if the
+		 * spectator is up to date
+		 */
+		public ByteBuffer poll() {
+			ByteBuffer frame = queue.poll();
+			return frame == null ? null : frame.duplicate();
+		}
+
+		/**
+		 * Takes the next frame, waiting for one if the spectator is up to date.
+		 * @return The frame, a view of the shared bytes of its own to send
+		 * @throws InterruptedException if interrupted while waiting
+		 */
+		public ByteBuffer take() throws InterruptedException {
+			return queue.take().duplicate();
+		}
+
+		/**
+		 * Gets the number of frames waiting to be sent.
+		 * @return Number of frames
+		 */
+		public int backlog() {
+			return queue.size();
+		}
+
+		/**
+		 * Stops sending frames to this spectator.
+		 */
+		public void leave() {
+			spectators.remove(this);
+		}
+	}
+}
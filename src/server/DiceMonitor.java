@@ -0,0 +1,351 @@
+/**
+ * @author Johanne
+ */
+package server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import logic.DiceEvent;
+import logic.DiceListener;
+import logic.Ludo;
+import logic.LudoDriver;
+import logic.MovesCheckedEvent;
+import sim.DiceStream;
+
+/**
+ * Watches the dice of live games for signs that they are not fair. Every game's throws are
+ * tested as they come, with three tests kept up to date a few operations per throw:
+ * a chi-square test of how often each face comes up, a runs test (Wald-Wolfowitz) of how
+ * sixes and other faces follow each other, and a test of the longest streak of sixes, which is
+ * flagged when a streak that long would be expected in fewer than the given share of games
+ * of the same length. A game is flagged as soon as one of its tests goes beyond the limit,
+ * and stays flagged. Faces and six-streaks are also counted over all games, for a chi-square
+ * test of the whole server's dice.
+ *
+ * The limit is given in standard deviations of a normal distribution, and every test is
+ * turned into the same tail probability. The tests are repeated after every throw, so a fair
+ * game is flagged more often than one test's tail probability: with the default limit of 4.5,
+ * about 1 in 5000 fair games of four players is flagged. No game is flagged before it has
+ * had minThrows throws, and the runs test waits for MIN_RUN_SIXES sixes.
+ *
+ * A game's counts are updated on the thread playing it; getters called from other threads
+ * may see them a throw late. The counts over all games are safe to read from any thread.
+ */
+public class DiceMonitor {
+	public static final int CHI_SQUARE = 1;
+	public static final int RUNS = 2;
+	public static final int STREAK = 4;
+	static final int MAX_STREAK = 16;	// Longer streaks are counted with this length
+	static final int MIN_RUN_SIXES = 20;	// Sixes needed before the runs test is close enough to normal
+
+	final double sigmas;
+	final int minThrows;
+	final double chiSquareLimit;	// The chi-square with 5 degrees of freedom as unlikely as the limit
+	final double tail;				// The tail probability of the limit
+	final LongAdder[] faces = new LongAdder[6];
+	final LongAdder[] streaks = new LongAdder[MAX_STREAK+1];	// Streaks of sixes by length
+	final LongAdder flagged = new LongAdder();
+
+	/**
+	 * Creates a monitor that flags games beyond 4.5 standard deviations, after 60 throws.
+	 */
+	public DiceMonitor() {
+		this(4.5, 60);
+	}
+
+	/**
+	 * Creates a monitor.
+	 * @param sigmas The limit, in standard deviations
+	 * @param minThrows Throws a game must have had before it can be flagged
+	 */
+	public DiceMonitor(double sigmas, int minThrows) {
+		if (sigmas <= 0) {
+			throw new IllegalArgumentException("Invalid limit: "+sigmas);
+		}
+		this.sigmas = sigmas;
+		this.minThrows = minThrows;
+		double k = 2 / (9.0*5);
+		chiSquareLimit = 5 * Math.pow(1 - k + sigmas*Math.sqrt(k), 3);	// Wilson-Hilferty
+		tail = tail(sigmas);
+		for (int i=0; i<faces.length; i++) {
+			faces[i] = new LongAdder();
+		}
+		for (int i=0; i<streaks.length; i++) {
+			streaks[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Starts watching a game and registers its counts as the game's DiceListener.
+	 * @param ludo The game
+	 * @return The game's counts
+	 */
+	public Game watch(Ludo ludo) {
+		Game game = new Game();
+		ludo.addDiceListener(game);
+		return game;
+	}
+
+	/**
+	 * Gets the number of times a face has come up in all games.
+	 * @param face The face (1-6)
+	 * @return Number of throws
+	 */
+	public long getCount(int face) {
+		return faces[face-1].sum();
+	}
+
+	/**
+	 * Gets the number of finished streaks of sixes of a length in all games.
+	 * @param length The length (1 and up); streaks of 16 and more are counted together
+	 * @return Number of streaks
+	 */
+	public long getStreaks(int length) {
+		return streaks[Math.min(length, MAX_STREAK)].sum();
+	}
+
+	/**
+	 * Gets the number of throws in all games.
+	 * @return Number of throws
+	 */
+	public long getThrows() {
+		long n = 0;
+		for (LongAdder face : faces) {
+			n += face.sum();
+		}
+		return n;
+	}
+
+	/**
+	 * Gets the chi-square of the faces of all games against fair dice, with 5 degrees of freedom.
+	 * @return The chi-square, or 0 if no dice has been thrown
+	 */
+	public double getChiSquare() {
+		long n = 0;
+		double squares = 0;
+		for (LongAdder face : faces) {
+			long count = face.sum();
+			n += count;
+			squares += (double) count * count;
+		}
+		return n == 0 ? 0 : 6 * squares / n - n;
+	}
+
+	/**
+	 * Gets whether the faces of all games together are beyond the limit.
+	 * @return Whether the server's dice look unfair
+	 */
+	public boolean isAnomalous() {
+		return getChiSquare() > chiSquareLimit;
+	}
+
+	/**
+	 * Gets the number of games flagged.
+	 * @return Number of games
+	 */
+	public long getFlaggedGames() {
+		return flagged.sum();
+	}
+
+	/**
+	 * The probability that a standard normal variable is above z, for z >= 0
+	 * (Abramowitz and Stegun 26.2.17, accurate to 7.5e-8).
+	 */
+	static double tail(double z) {
+		double t = 1 / (1 + 0.2316419*z);
+		double poly = t*(0.319381530 + t*(-0.356563782 + t*(1.781477937 + t*(-1.821255978 + t*1.330274429))));
+		return Math.exp(-z*z/2) / Math.sqrt(2*Math.PI) * poly;
+	}
+
+	/**
+	 * The counts and tests of one game, also its DiceListener.
+	 */
+	public class Game implements DiceListener {
+		final int[] counts = new int[6];
+		int n;
+		long squares;		// The sum of the squared counts, for the chi-square
+		int sixes;
+		int runs;			// Runs of sixes and of other faces
+		int streak;			// The current streak of sixes
+		int longest;
+		int flags;
+
+		@Override
+		public void diceThrown(DiceEvent event) {
+			int dice = event.getDice();
+			boolean six = dice == 6;
+			squares += 2*counts[dice-1] + 1;	// (c+1)^2 - c^2
+			counts[dice-1]++;
+			faces[dice-1].increment();
+			if (n == 0 || six != (streak > 0)) {
+				runs++;
+			}
+			n++;
+			if (six) {
+				sixes++;
+				streak++;
+				if (streak > longest) {
+					longest = streak;
+				}
+			} else if (streak > 0) {
+				streaks[Math.min(streak, MAX_STREAK)].increment();
+				streak = 0;
+			}
+			if (n >= minThrows) {
+				check();
+			}
+		}
+
+		@Override
+		public void movesChecked(MovesCheckedEvent event) {
+		}
+
+		/**
+		 * Runs the tests and flags what goes beyond the limit.
+		 */
+		void check() {
+			// The limits are compared without dividing or taking roots, as this runs on every throw
+			int found = 0;
+			if (6.0*squares - (double) n*n > chiSquareLimit*n) {
+				found |= CHI_SQUARE;
+			}
+			if (sixes >= MIN_RUN_SIXES) {
+				double product = 2.0 * sixes * (n-sixes);
+				double deviation = (double) runs*n - product - n;	// n times the deviation from the mean
+				if (deviation*deviation*(n-1) > sigmas*sigmas * product*(product-n)) {
+					found |= RUNS;
+				}
+			}
+			if (streak == longest && streak > 1 && getStreakProbability() < tail) {
+				found |= STREAK;
+			}
+			if ((found & ~flags) != 0) {
+				if (flags == 0) {
+					flagged.increment();
+				}
+				flags |= found;
+			}
+		}
+
+		/**
+		 * Gets the number of throws in the game.
+		 * @return Number of throws
+		 */
+		public int getThrows() {
+			return n;
+		}
+
+		/**
+		 * Gets the number of times a face has come up in the game.
+		 * @param face The face (1-6)
+		 * @return Number of throws
+		 */
+		public int getCount(int face) {
+			return counts[face-1];
+		}
+
+		/**
+		 * Gets the chi-square of the game's faces against fair dice, with 5 degrees of freedom.
+		 * @return The chi-square, or 0 if no dice has been thrown
+		 */
+		public double getChiSquare() {
+			return n == 0 ? 0 : 6.0 * squares / n - n;
+		}
+
+		/**
+		 * Gets how far the number of runs of sixes and other faces is from what fair dice give,
+		 * in standard deviations. Too few runs means sixes come in clusters, too many that
+		 * they are spread out too evenly.
+		 * @return The deviation, or 0 if it is not defined yet
+		 */
+		public double getRunsDeviation() {
+			double product = 2.0 * sixes * (n-sixes);
+			double variance = product * (product - n) / ((double) n*n*(n-1));
+			return variance <= 0 ? 0 : (runs - product/n - 1) / Math.sqrt(variance);
+		}
+
+		/**
+		 * Gets the longest streak of sixes in the game.
+		 * @return Length of the streak
+		 */
+		public int getLongestStreak() {
+			return longest;
+		}
+
+		/**
+		 * Gets about how likely fair dice are to give a streak of sixes as long as the longest in
+		 * as many throws: the expected number of such streaks, which is close to the probability
+		 * when it is small.
+		 * @return The probability, capped at 1
+		 */
+		public double getStreakProbability() {
+			return Math.min(1, (n - longest + 1) * Math.pow(1/6.0, longest) * (n > longest ? 5/6.0 : 1));
+		}
+
+		/**
+		 * Gets the tests the game has failed.
+		 * @return CHI_SQUARE, RUNS and STREAK or-ed together, 0 if the dice look fair
+		 */
+		public int getFlags() {
+			return flags;
+		}
+
+		/**
+		 * Gets whether the game has been flagged.
+		 * @return Whether the game's dice look unfair
+		 */
+		public boolean isAnomalous() {
+			return flags != 0;
+		}
+	}
+
+	/**
+	 * Plays games with fair dice and with loaded dice, reports how many of each the monitor
+	 * flags, and measures what the monitor costs per throw.
+	 * Usage: DiceMonitor [games] [seed]
+	 */
+	public static void main(String[] args) {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+
+		for (int loaded=0; loaded<2; loaded++) {
+			DiceMonitor monitor = new DiceMonitor();
+			long withMonitor = 0;
+			long without = 0;
+			long throwsMade = 0;
+			for (int g=0; g<games; g++) {
+				for (int watched=0; watched<2; watched++) {
+					LudoDriver driver = new LudoDriver(new Ludo("Red", "Blue", "Yellow", "Green"));
+					Ludo ludo = driver.getGame();
+					if (watched == 1) {
+						monitor.watch(ludo);
+					}
+					long start = System.nanoTime();
+					int n = 0;
+					for (; n<100000 && ludo.getWinner() == -1; n++) {
+						int dice = DiceStream.roll(seed, g, n);
+						if (loaded == 1 && dice == 1 && DiceStream.roll(~seed, g, n) <= 2) {
+							dice = 6;	// A third of the ones turned into sixes
+						}
+						int movable = driver.roll(dice);
+						if (movable != 0) {
+							driver.move(LudoDriver.pick(movable, 0));
+						}
+					}
+					long nanos = System.nanoTime()-start;
+					if (watched == 1) {
+						withMonitor += nanos;
+						throwsMade += n;
+					} else {
+						without += nanos;
+					}
+				}
+			}
+			System.out.printf("%s dice: %d of %d games flagged, %d throws, chi-square over all %.1f%s%n",
+					loaded == 1 ? "Loaded" : "Fair", monitor.getFlaggedGames(), games, throwsMade,
+					monitor.getChiSquare(), monitor.isAnomalous() ? " (anomalous)" : "");
+			System.out.printf("%.1f ns per throw with the monitor, %.1f ns without%n",
+					(double) withMonitor / throwsMade, (double) without / throwsMade);
+		}
+	}
+}
@@ -0,0 +1,427 @@
+/**
+ * @author Johanne
+ */
+package server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+import logic.BoardLayout;
+import logic.GameState;
+import logic.Ludo;
+import logic.Rules;
+
+/**
+ * Keeps the running games of a server in a memory-mapped file, one fixed-size slot per game,
+ * so that a restarted server can open the file and carry on with every game. Saving a game
+ * writes straight into the mapping without a system call; the pages reach the file when the
+ * operating system writes them back, which survives the server process crashing. Call force()
+ * to survive the machine crashing too.
+ *
+ * Each slot is guarded by a sequence lock: the sequence number is odd while the slot is being
+ * written, so a reader that sees it odd or changed reads again. A slot must only be saved by
+ * one thread at a time, normally the thread playing its game; any thread may load it. A slot
+ * left odd in the file was torn by a crash in the middle of a save: opening the store frees
+ * it, so that game is lost, and a reader that finds a slot odd for longer than any save
+ * takes gives up with an exception rather than waiting for it.
+ *
+ * File: a header (magic "LUDS", version, slot count, slot size, the board's players, arm and
+ * stretch), then the slots, little-endian. Slot: sequence number (int), game id (long), status
+ * (0 for a free slot), rules, registered and active players, current player, attempt, extra
+ * throw and winner (one byte each), then one byte per piece position and the players' names
+ * (a length byte and up to NAME_BYTES-1 bytes of UTF-8 each).
+ */
+public class GameStore implements Closeable {
+	static final int MAGIC = 0x4C554453;	// "LUDS"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 64;
+	static final int NAME_BYTES = 64;
+	static final int SEQUENCE = 0;
+	static final int ID = 8;
+	static final int STATE = 16;
+	static final int POSITIONS = 24;
+	static final String[] STATUSES = {null, "CREATED", "INITIATED", "STARTED", "FINISHED"};	// 0 is a free slot
+	static final long STUCK_NANOS = 1000000000L;	// A save takes microseconds; a slot odd this long has no writer
+
+	static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+	final FileChannel channel;
+	final MappedByteBuffer map;
+	final BoardLayout layout;
+	final int slots;
+	final int slotSize;
+	final int names;		// Offset of the names in a slot
+	final BitSet used = new BitSet();
+	final String[][] savedNames;	// The names last written to each slot, to skip writing them again
+	final int torn;			// Slots freed on opening because a save was cut short
+
+	/**
+	 * Opens a store, creating it if the file does not exist or is empty. Slots of an existing
+	 * store that were being saved when the server stopped are freed.
+	 * @param file The file
+	 * @param layout The board every game in the store is played on (at most 8 players, and
+	 * local fields up to 127)
+	 * @param slots Number of slots in a new store; an existing store keeps its own
+	 * @throws IOException if the file cannot be opened, or holds a store for another board
+	 */
+	public GameStore(Path file, BoardLayout layout, int slots) throws IOException {
+		if (layout.players() > Byte.SIZE) {
+			throw new IllegalArgumentException("Too many players to store: "+layout.players());
+		}
+		if (layout.goalLocal() > Byte.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many fields to store: "+layout.goalLocal());
+		}
+		this.layout = layout;
+		names = POSITIONS + layout.players()*4;
+		slotSize = (names + layout.players()*NAME_BYTES + 63) & ~63;	// Whole cache lines
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			boolean existing = channel.size() > 0;
+			if (existing) {
+				MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+				header.order(ByteOrder.LITTLE_ENDIAN);
+				if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+					throw new IOException("Not a game store: "+file);
+				}
+				this.slots = header.getInt();
+				if (header.getInt() != slotSize || header.getInt() != layout.players()
+						|| header.getInt() != (layout.lapField()-1) / layout.players()
+						|| header.getInt() != layout.goalLocal()-layout.lapField()) {
+					throw new IOException("The game store is for another board: "+file);
+				}
+			} else if (slots > 0) {
+				this.slots = slots;
+			} else {
+				throw new IllegalArgumentException("Invalid number of slots: "+slots);
+			}
+			long size = HEADER_SIZE + (long) this.slots*slotSize;
+			if (size > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Too many slots to map: "+this.slots);
+			}
+			map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			if (!existing) {
+				map.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, this.slots).putInt(12, slotSize)
+						.putInt(16, layout.players()).putInt(20, (layout.lapField()-1) / layout.players())
+						.putInt(24, layout.goalLocal()-layout.lapField());
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		savedNames = new String[this.slots][];
+		int torn = 0;
+		for (int slot=0; slot<this.slots; slot++) {
+			int base = offset(slot);
+			int sequence = (int) INT.get(map, base + SEQUENCE);
+			if ((sequence & 1) != 0) {	// Half-written: neither the old game nor the new one
+				map.put(base + STATE, (byte) 0);
+				INT.setRelease(map, base + SEQUENCE, sequence + 1);
+				torn++;
+			}
+			if (map.get(base + STATE) != 0) {
+				used.set(slot);
+			}
+		}
+		this.torn = torn;
+		if (torn > 0) {
+			map.force();
+		}
+	}
+
+	/**
+	 * Gets the number of slots freed when the store was opened, because the server stopped
+	 * while saving their games.
+	 * @return Number of slots
+	 */
+	public int getTornSlots() {
+		return torn;
+	}
+
+	/**
+	 * Gets the number of slots.
+	 * @return Number of slots
+	 */
+	public int slots() {
+		return slots;
+	}
+
+	/**
+	 * Gets whether a slot holds a game.
+	 * @param slot The slot
+	 * @return Whether the slot is in use
+	 */
+	public synchronized boolean isUsed(int slot) {
+		return used.get(slot);
+	}
+
+	/**
+	 * Takes a free slot for a new game. The slot stays free in the file until the game is saved.
+	 * @return The slot
+	 * @throws IllegalStateException if every slot is in use
+	 */
+	public synchronized int allocate() {
+		int slot = used.nextClearBit(0);
+		if (slot >= slots) {
+			throw new IllegalStateException("No free slots in the game store");
+		}
+		used.set(slot);
+		return slot;
+	}
+
+	/**
+	 * Frees the slot of a game that is over or abandoned.
+	 * @param slot The slot
+	 */
+	public void release(int slot) {
+		int base = offset(slot);
+		int sequence = beginWrite(base);
+		map.put(base + STATE, (byte) 0);
+		endWrite(base, sequence);
+		savedNames[slot] = null;
+		synchronized (this) {
+			used.clear(slot);
+		}
+	}
+
+	/**
+	 * Writes a game into its slot, replacing what was there. Call after each turn.
+	 * @param slot The game's slot, from allocate()
+	 * @param id The game's id, for the server to find the game again
+	 * @param state A snapshot of the game, on this store's board
+	 * @throws IllegalArgumentException if the game is on another board or a name is too long
+	 */
+	public void save(int slot, long id, GameState state) {
+		if (state.getLayout() != layout) {
+			throw new IllegalArgumentException("The game is on another board");
+		}
+		int base = offset(slot);
+		byte[][] encoded = encodeNames(slot, state);	// Before the slot is locked; may throw
+		int sequence = beginWrite(base);
+		map.putLong(base + ID, id);
+		int active = 0;
+		int registered = 0;
+		for (int pl=0; pl<layout.players(); pl++) {
+			registered |= state.getPlayerName(pl) != null ? 1 << pl : 0;
+			active |= state.isActive(pl) ? 1 << pl : 0;
+			for (int pi=0; pi<4; pi++) {
+				map.put(base + POSITIONS + pl*4 + pi, (byte) state.getLocalPosition(pl, pi));
+			}
+		}
+		map.put(base + STATE, (byte) status(state.getStatus()));
+		map.put(base + STATE + 1, (byte) state.getRules().toBits());
+		map.put(base + STATE + 2, (byte) registered);
+		map.put(base + STATE + 3, (byte) active);
+		map.put(base + STATE + 4, (byte) state.getCurrentPlayer());
+		map.put(base + STATE + 5, (byte) state.getAttempt());
+		map.put(base + STATE + 6, (byte) (state.getExtraThrow() ? 1 : 0));
+		map.put(base + STATE + 7, (byte) state.getWinner());
+		if (encoded != null) {
+			for (int pl=0; pl<layout.players(); pl++) {
+				int at = base + names + pl*NAME_BYTES;
+				map.put(at, (byte) (encoded[pl] == null ? -1 : encoded[pl].length));
+				for (int i=0; encoded[pl] != null && i<encoded[pl].length; i++) {
+					map.put(at+1+i, encoded[pl][i]);
+				}
+			}
+		}
+		endWrite(base, sequence);
+		synchronized (this) {
+			used.set(slot);
+		}
+	}
+
+	/**
+	 * Encodes the names of a game if they differ from those last written to its slot.
+	 * @return The names in UTF-8, null for vacant seats, or null if they are already written
+	 */
+	byte[][] encodeNames(int slot, GameState state) {
+		String[] saved = savedNames[slot];
+		boolean same = saved != null;
+		for (int pl=0; same && pl<layout.players(); pl++) {
+			same = saved[pl] == state.getPlayerName(pl);	// Names are kept, not copied, by Ludo
+		}
+		if (same) {
+			return null;
+		}
+		byte[][] encoded = new byte[layout.players()][];
+		String[] names = new String[layout.players()];
+		for (int pl=0; pl<layout.players(); pl++) {
+			names[pl] = state.getPlayerName(pl);
+			if (names[pl] != null) {
+				encoded[pl] = names[pl].getBytes(StandardCharsets.UTF_8);
+				if (encoded[pl].length >= NAME_BYTES) {
+					throw new IllegalArgumentException("Name too long to store: "+names[pl]);
+				}
+			}
+		}
+		savedNames[slot] = names;
+		return encoded;
+	}
+
+	/**
+	 * Reads the game in a slot. If the slot is being saved at the same time, reads it again.
+	 * @param slot The slot
+	 * @return The game, or null if the slot is free
+	 * @throws IllegalStateException if the slot stays half-written
+	 */
+	public GameState load(int slot) {
+		int base = offset(slot);
+		byte[] copy = new byte[slotSize];
+		long since = 0;
+		for (;;) {
+			int sequence = (int) INT.getAcquire(map, base + SEQUENCE);
+			if ((sequence & 1) != 0) {
+				since = awaitWriter(slot, since);
+				continue;
+			}
+			for (int i=0; i<slotSize; i++) {
+				copy[i] = map.get(base + i);
+			}
+			VarHandle.loadLoadFence();
+			if ((int) INT.getOpaque(map, base + SEQUENCE) == sequence) {
+				return decode(copy);
+			}
+		}
+	}
+
+	/**
+	 * Gets the id of the game in a slot, as given to save().
+	 * @param slot The slot
+	 * @return The id, or 0 if the slot is free
+	 * @throws IllegalStateException if the slot stays half-written
+	 */
+	public long getId(int slot) {
+		int base = offset(slot);
+		long since = 0;
+		for (;;) {
+			int sequence = (int) INT.getAcquire(map, base + SEQUENCE);
+			if ((sequence & 1) != 0) {
+				since = awaitWriter(slot, since);
+				continue;
+			}
+			long id = map.get(base + STATE) == 0 ? 0 : map.getLong(base + ID);
+			VarHandle.loadLoadFence();
+			if ((int) INT.getOpaque(map, base + SEQUENCE) == sequence) {
+				return id;
+			}
+		}
+	}
+
+	/**
+	 * Waits a moment for a slot being written. A live save is over within microseconds, so a
+	 * slot still odd after STUCK_NANOS is not being written by anyone.
+	 * @param since When the reader started waiting, or 0 on its first wait
+	 * @return When the reader started waiting
+	 * @throws IllegalStateException if the slot has been odd too long
+	 */
+	long awaitWriter(int slot, long since) {
+		long now = System.nanoTime();
+		if (since == 0) {
+			return now;
+		}
+		if (now - since > STUCK_NANOS) {
+			throw new IllegalStateException("Slot "+slot+" is left half-written");
+		}
+		Thread.onSpinWait();
+		return since;
+	}
+
+	/**
+	 * Creates a game from a slot, in the state it was last saved in. Listeners must be added
+	 * to the new game again.
+	 * @param slot The slot
+	 * @return The game, or null if the slot is free
+	 */
+	public Ludo restore(int slot) {
+		GameState state = load(slot);
+		if (state == null) {
+			return null;
+		}
+		Ludo ludo = new Ludo(layout, state.getRules());
+		ludo.restore(state);
+		return ludo;
+	}
+
+	/**
+	 * Decodes a copy of a slot.
+	 */
+	GameState decode(byte[] slot) {
+		int status = slot[STATE];
+		if (status == 0) {
+			return null;
+		}
+		int players = layout.players();
+		int registered = slot[STATE + 2] & 0xFF;
+		String[] playerNames = new String[players];
+		int[][] position = new int[players][4];
+		for (int pl=0; pl<players; pl++) {
+			for (int pi=0; pi<4; pi++) {
+				position[pl][pi] = slot[POSITIONS + pl*4 + pi];
+			}
+			int length = slot[names + pl*NAME_BYTES];
+			if ((registered >> pl & 1) != 0 && length >= 0) {
+				playerNames[pl] = new String(slot, names + pl*NAME_BYTES + 1, length, StandardCharsets.UTF_8);
+			}
+		}
+		return new GameState(layout, Rules.fromBits(slot[STATE + 1]), playerNames, slot[STATE + 3] & 0xFF,
+				position, slot[STATE + 4], slot[STATE + 5], slot[STATE + 6] != 0, slot[STATE + 7],
+				STATUSES[status]);
+	}
+
+	/**
+	 * Marks a slot as being written.
+	 * @return The slot's sequence number before writing
+	 */
+	int beginWrite(int base) {
+		int sequence = (int) INT.get(map, base + SEQUENCE);
+		INT.setOpaque(map, base + SEQUENCE, sequence + 1);
+		VarHandle.storeStoreFence();	// Readers see the odd number before any of the new bytes
+		return sequence;
+	}
+
+	/**
+	 * Marks a slot as written.
+	 */
+	void endWrite(int base, int sequence) {
+		INT.setRelease(map, base + SEQUENCE, sequence + 2);
+	}
+
+	int offset(int slot) {
+		if (slot < 0 || slot >= slots) {
+			throw new IndexOutOfBoundsException("No such slot: "+slot);
+		}
+		return HEADER_SIZE + slot*slotSize;
+	}
+
+	static int status(String name) {
+		for (int i=1; i<STATUSES.length; i++) {
+			if (STATUSES[i].equals(name)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unknown status: "+name);
+	}
+
+	/**
+	 * Writes every saved game to the file, so that the games survive the machine crashing.
+	 */
+	public void force() {
+		map.force();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * @author Johanne
+ */
+package server;
+
+import java.nio.ByteBuffer;
+
+import logic.Ludo;
+import logic.PieceEvent;
+import logic.PieceListener;
+
+/**
+ * Keeps remote copies of a game up to date without sending the whole board after every move.
+ * PieceEvents mark the pieces that moved, and commit(), called once per throw or move, gives the
+ * game a new version number and stamps the pieces and turn state that changed with it. A client
+ * joining gets snapshot(); after that, delta(v) holds everything that changed since version v,
+ * merged into one frame however many versions the client missed.
+ *
+ * Frames: type (SNAPSHOT or DELTA), version, base version, a flag for whether the turn state
+ * (current player, attempt, extra throw, winner, active players) follows, then the number of
+ * pieces and for each piece player*4+piece and its local position, one byte each.
+ * Frames are encoded from the live game, so only ask for them right after commit().
+ */
+public class GameSync implements PieceListener {
+	public static final byte SNAPSHOT = 0;
+	public static final byte DELTA = 1;
+	static final int HEADER = 10;		// Type, version, base version, turn flag
+	static final int TURN_STATE = 5;	// Current player, attempt, extra throw, winner, active players
+
+	final Ludo ludo;
+	final int pieces;		// Pieces in the game, 4 per player
+	int version;
+	long dirty;				// Pieces moved since the last commit(), one bit per piece
+	final int[] changedAt;	// Version in which each piece last moved
+	int turnChangedAt;		// Version in which the turn state last changed
+	int turnState = -1;		// The committed current player, attempt, extra throw and winner
+	int activeState = -1;	// The committed active players
+
+	byte[] cachedDelta;		// delta(version-1), shared by every client that is up to date
+	byte[] cachedSnapshot;	// snapshot() of the current version
+
+	/**
+	 * Starts tracking a game and registers as its PieceListener.
+	 * @param ludo The game (at most 8 players, and local fields up to 127)
+	 */
+	public GameSync(Ludo ludo) {
+		this.ludo = ludo;
+		pieces = ludo.getLayout().players()*4;
+		if (ludo.getLayout().players() > Byte.SIZE) {
+			throw new IllegalArgumentException("Too many players to sync: "+ludo.getLayout().players());
+		}
+		if (ludo.getLayout().goalLocal() > Byte.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many fields to sync: "+ludo.getLayout().goalLocal());
+		}
+		changedAt = new int[pieces];
+		ludo.addPieceListener(this);
+		commit();
+	}
+
+	@Override
+	public void pieceMoved(PieceEvent event) {
+		dirty |= 1L << (event.getPlayer()*4 + event.getPiece());
+	}
+
+	/**
+	 * Closes the current version. Call after each throw or move has been handled.
+	 * @return The current version, new if anything changed
+	 */
+	public int commit() {
+		int turn = packTurnState();
+		int active = activeMask();
+		if (dirty == 0 && turn == turnState && active == activeState) {
+			return version;
+		}
+		version++;
+		for (long bits = dirty; bits != 0; bits &= bits-1) {
+			changedAt[Long.numberOfTrailingZeros(bits)] = version;
+		}
+		if (turn != turnState || active != activeState) {
+			turnState = turn;
+			activeState = active;
+			turnChangedAt = version;
+		}
+		dirty = 0;
+		cachedDelta = null;
+		cachedSnapshot = null;
+		return version;
+	}
+
+	/**
+	 * Gets the current version.
+	 * @return The version
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Encodes the whole game, for clients that join or have lost track.
+	 * @return The snapshot frame
+	 */
+	public byte[] snapshot() {
+		if (cachedSnapshot == null) {
+			cachedSnapshot = encode(SNAPSHOT, 0);
+		}
+		return cachedSnapshot;
+	}
+
+	/**
+	 * Encodes everything that changed after the given version.
+	 * @param since The last version the client has
+	 * @return The delta frame; it holds no pieces and no turn state if nothing changed
+	 */
+	public byte[] delta(int since) {
+		if (since == version-1) {
+			if (cachedDelta == null) {
+				cachedDelta = encode(DELTA, since);
+			}
+			return cachedDelta;
+		}
+		return encode(DELTA, since);
+	}
+
+	/**
+	 * Encodes the pieces and turn state changed after a version.
+	 */
+	byte[] encode(byte type, int since) {
+		int count = 0;
+		for (int i=0; i<pieces; i++) {
+			if (changedAt[i] > since || type == SNAPSHOT) {
+				count++;
+			}
+		}
+		boolean turn = turnChangedAt > since || type == SNAPSHOT;
+		ByteBuffer frame = ByteBuffer.allocate(HEADER + (turn ? TURN_STATE : 0) + 1 + 2*count);
+		frame.put(type).putInt(version).putInt(since).put((byte) (turn ? 1 : 0));
+		if (turn) {
+			frame.putInt(turnState).put((byte) activeState);
+		}
+		frame.put((byte) count);
+		for (int i=0; i<pieces; i++) {
+			if (changedAt[i] > since || type == SNAPSHOT) {
+				frame.put((byte) i).put((byte) ludo.getLocalPosition(i/4, i%4));
+			}
+		}
+		return frame.array();
+	}
+
+	/**
+	 * Packs the current player, attempt, extra throw and winner into an int, one byte each,
+	 * in the order they are sent.
+	 */
+	int packTurnState() {
+		return (ludo.getCurrentPlayer() << 24) | ((ludo.getAttempt() & 0xFF) << 16)
+				| ((ludo.getExtraThrow() ? 1 : 0) << 8) | (ludo.getWinner() & 0xFF);
+	}
+
+	/**
+	 * Gets the active players, one bit per player.
+	 */
+	int activeMask() {
+		int mask = 0;
+		for (int i=0; i<ludo.getLayout().players(); i++) {
+			mask |= ludo.isActive(i) ? 1 << i : 0;
+		}
+		return mask;
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * @author Johanne
+ */
+package server;
+
+import java.util.Arrays;
+
+/**
+ * Counts latencies in buckets that are exact below 128 ns and then 64 to every power of two,
+ * so any percentile is within 1.6% of the true value whatever the range. Recording is a shift
+ * and an increment, with no allocation. Not thread-safe: give each thread its own histogram
+ * and add() them together afterwards.
+ */
+public class LatencyHistogram {
+	static final int SUB_BITS = 6;				// 64 buckets per power of two
+	static final int SUB = 1 << SUB_BITS;
+
+	final long[] counts = new long[(64-SUB_BITS)*SUB + SUB];
+	long total;
+	long max;
+
+	/**
+	 * Counts one latency.
+	 * @param nanos The latency in nanoseconds (negative counts as 0)
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts[index(value)]++;
+		total++;
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Adds the counts of another histogram to this one.
+	 * @param other The histogram to add
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i=0; i<counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		total += other.total;
+		max = Math.max(max, other.max);
+	}
+
+	/**
+	 * Forgets all latencies counted so far.
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0);
+		total = 0;
+		max = 0;
+	}
+
+	/**
+	 * Gets the number of latencies counted.
+	 * @return The count
+	 */
+	public long getCount() {
+		return total;
+	}
+
+	/**
+	 * Gets the highest latency counted.
+	 * @return The latency in nanoseconds
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * Gets the latency that the given share of all latencies are at or below.
+	 * @param percentile The percentile (0-100)
+	 * @return The latency in nanoseconds, rounded up to the end of its bucket, or 0 if empty
+	 */
+	public long getPercentile(double percentile) {
+		long rank = (long) Math.ceil(percentile / 100 * total);
+		long seen = 0;
+		for (int i=0; i<counts.length; i++) {
+			seen += counts[i];
+			if (seen >= Math.max(1, rank)) {
+				return Math.min(max, highest(i));
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Finds the bucket of a value: the value itself below 2*SUB, otherwise its top SUB_BITS+1
+	 * bits placed after the buckets of the smaller powers of two.
+	 */
+	static int index(long value) {
+		if (value < 2*SUB) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return shift*SUB + (int) (value >>> shift);
+	}
+
+	/**
+	 * Gets the highest value that falls in a bucket.
+	 */
+	static long highest(int index) {
+		if (index < 2*SUB) {
+			return index;
+		}
+		int shift = index/SUB - 1;
+		long mantissa = index - shift*SUB;
+		return ((mantissa+1) << shift) - 1;
+	}
+}
@@ -0,0 +1,218 @@
+/**
+ * @author Johanne
+ */
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import bot.RandomPiece;
+import bot.Strategy;
+import logic.Ludo;
+import logic.LudoDriver;
+import sim.DiceStream;
+
+/**
+ * Measures how many concurrent games this machine can host. Games are played in-process by
+ * bot clients, each turn doing the work the server would: the throw, the bot's move and a
+ * GameSync delta for the clients. Worker threads play turns at a fixed target rate, and each
+ * turn's latency is measured from when it was scheduled to start, not from when it actually
+ * started, so a stall is counted against every turn it held up instead of hiding them.
+ * Finished games are replaced by new ones, so the number of games stays the same. Turns still
+ * waiting to start when the time is up are reported as behind schedule.
+ * Usage: LoadTest [games] [turns per second, 0 for as fast as possible] [seconds] [threads] [warm-up seconds]
+ */
+public class LoadTest {
+	static final String[] NAMES = {"Red", "Blue", "Yellow", "Green"};
+
+	final int games;
+	final double rate;
+	final int threads;
+	final Strategy bot = new RandomPiece();
+
+	/**
+	 * Creates a load test.
+	 * @param games Number of games played at the same time
+	 * @param rate Target turns per second over all games, or 0 to play as fast as possible
+	 * @param threads Threads playing the games
+	 */
+	public LoadTest(int games, double rate, int threads) {
+		if (games < threads) {
+			throw new IllegalArgumentException("Fewer games than threads: "+games);
+		}
+		this.games = games;
+		this.rate = rate;
+		this.threads = threads;
+	}
+
+	/**
+	 * Plays for the given time and collects the results of all threads.
+	 * @param warmUpNanos Time played before latencies are counted
+	 * @param nanos Time played while latencies are counted
+	 * @return The results
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	public Result run(long warmUpNanos, long nanos) throws InterruptedException {
+		long start = System.nanoTime();
+		List<Worker> workers = new ArrayList<>();
+		for (int t=0; t<threads; t++) {
+			Worker worker = new Worker(t, start, start+warmUpNanos, start+warmUpNanos+nanos);
+			workers.add(worker);
+			worker.start();
+		}
+		Result result = new Result(nanos);
+		for (Worker worker : workers) {
+			worker.join();
+			result.latency.add(worker.latency);
+			result.turns += worker.turns;
+			result.gamesFinished += worker.gamesFinished;
+			result.behind += worker.behind;
+		}
+		return result;
+	}
+
+	/**
+	 * One of the threads playing games. Thread t plays every game g with g % threads == t,
+	 * one turn at a time in round-robin order.
+	 */
+	class Worker extends Thread {
+		final Table[] tables;
+		final long start;
+		final long measureFrom;
+		final long end;
+		final LatencyHistogram latency = new LatencyHistogram();
+		long turns;
+		int gamesFinished;
+		long behind;	// Turns that were due but not started when the time was up
+
+		Worker(int t, long start, long measureFrom, long end) {
+			super("LoadTest-"+t);
+			List<Table> own = new ArrayList<>();
+			for (int g=t; g<games; g+=threads) {
+				own.add(new Table(g));
+			}
+			tables = own.toArray(new Table[own.size()]);
+			this.start = start;
+			this.measureFrom = measureFrom;
+			this.end = end;
+		}
+
+		@Override
+		public void run() {
+			long period = rate > 0 ? (long) (1e9 * threads / rate) : 0;	// Between turns of this thread
+			long intended = start;
+			for (int next=0; ; next = (next+1) % tables.length) {
+				long now = System.nanoTime();
+				if (period == 0) {
+					intended = now;		// Closed loop: every turn starts when the last one ends
+				} else if (intended < measureFrom && now >= measureFrom) {
+					intended = measureFrom;	// Turns left over from the warm-up are not measured
+				} else if (intended > now) {
+					LockSupport.parkNanos(intended - now);
+				}
+				if (intended >= end || now >= end) {
+					behind = period == 0 ? 0 : (Math.min(now, end) - intended + period - 1) / period;
+					return;
+				}
+				if (tables[next].turn()) {
+					tables[next] = new Table(tables[next].id + games);	// A new game at the table
+					gamesFinished++;
+				}
+				if (intended >= measureFrom) {
+					latency.record(System.nanoTime() - intended);
+					turns++;
+				}
+				intended += period;
+			}
+		}
+	}
+
+	/**
+	 * One game with its bots and the sync the server keeps for its clients.
+	 */
+	class Table {
+		final int id;		// Game number, for the dice
+		final LudoDriver driver;
+		final GameSync sync;
+		int throwsMade;
+		int clientVersion;	// The version the clients have
+
+		Table(int id) {
+			this.id = id;
+			driver = new LudoDriver(new Ludo(NAMES[0], NAMES[1], NAMES[2], NAMES[3]));
+			sync = new GameSync(driver.getGame());
+			clientVersion = sync.getVersion();
+		}
+
+		/**
+		 * Plays one turn: a throw, the bot's move if it has one, and the delta sent to clients.
+		 * @return Whether the game is over
+		 */
+		boolean turn() {
+			Ludo ludo = driver.getGame();
+			int dice = DiceStream.roll(1, id, throwsMade++);
+			int movable = driver.roll(dice);
+			if (movable != 0) {
+				driver.move(bot.choosePiece(ludo, dice, movable));
+			}
+			sync.commit();
+			sync.delta(clientVersion);
+			clientVersion = sync.getVersion();
+			return ludo.getWinner() != -1;
+		}
+	}
+
+	/**
+	 * The turns played and their latencies while measuring.
+	 */
+	public static class Result {
+		final LatencyHistogram latency = new LatencyHistogram();
+		final long nanos;
+		long turns;
+		int gamesFinished;
+		long behind;
+
+		Result(long nanos) {
+			this.nanos = nanos;
+		}
+
+		/**
+		 * Gets the latencies of the turns played while measuring.
+		 * @return The histogram
+		 */
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		/**
+		 * Gets the turns played per second while measuring.
+		 * @return The throughput
+		 */
+		public double getThroughput() {
+			return turns / (nanos / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d turns, %.0f turns/s, %d games finished, %d turns behind schedule%n"
+					+ "latency p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+					turns, getThroughput(), gamesFinished, behind,
+					latency.getPercentile(50) / 1e3, latency.getPercentile(99) / 1e3,
+					latency.getPercentile(99.9) / 1e3, latency.getMax() / 1e3);
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		double rate = args.length > 1 ? Double.parseDouble(args[1]) : 100000;
+		double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		double warmUp = args.length > 4 ? Double.parseDouble(args[4]) : 2;
+
+		System.out.printf("%d games on %d threads, target %s turns/s%n",
+				games, threads, rate > 0 ? String.format("%.0f", rate) : "unlimited");
+		Result result = new LoadTest(games, rate, threads).run((long) (warmUp*1e9), (long) (seconds*1e9));
+		System.out.println(result);
+	}
+}
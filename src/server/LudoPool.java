@@ -0,0 +1,163 @@
+/**
+ * @author Johanne
+ */
+package server;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.management.ThreadMXBean;
+
+import logic.BoardLayout;
+import logic.Ludo;
+import logic.LudoDriver;
+import logic.NoRoomForMorePlayersException;
+import logic.NotEnoughPlayersException;
+import logic.Rules;
+import sim.DiceStream;
+
+/**
+ * A pool of Ludo instances for one board and set of rules. Finished games are released to
+ * the pool and reset in place for the next players, instead of building a new game with its
+ * fields and lists for every table and leaving the old one to the garbage collector. The pool
+ * keeps at most its capacity of games; games released beyond that are left to the collector,
+ * and a new game is built when the pool is empty. Safe to use from any thread.
+ */
+public class LudoPool {
+	final BoardLayout layout;
+	final Rules rules;
+	final ArrayBlockingQueue<Ludo> idle;
+	final LongAdder created = new LongAdder();
+	final LongAdder reused = new LongAdder();
+
+	/**
+	 * Creates an empty pool of standard games.
+	 * @param capacity Games to keep at most
+	 */
+	public LudoPool(int capacity) {
+		this(BoardLayout.STANDARD, Rules.STANDARD, capacity);
+	}
+
+	/**
+	 * Creates an empty pool.
+	 * @param layout The board of the games
+	 * @param rules The rules of the games
+	 * @param capacity Games to keep at most
+	 */
+	public LudoPool(BoardLayout layout, Rules rules, int capacity) {
+		this.layout = layout;
+		this.rules = rules;
+		idle = new ArrayBlockingQueue<>(capacity);
+	}
+
+	/**
+	 * Gets a new game for the given players: a released game reset for them, or a new one if
+	 * the pool is empty. The game has no listeners.
+	 * @param names The names of the players, at least two; null names are skipped
+	 * @return The game
+	 * @throws NotEnoughPlayersException if fewer than two names are given
+	 * @throws NoRoomForMorePlayersException if there are more names than player colors
+	 */
+	public Ludo acquire(String... names) {
+		Ludo ludo = idle.poll();
+		if (ludo == null) {
+			created.increment();
+			return new Ludo(layout, rules, names);
+		}
+		reused.increment();
+		try {
+			ludo.reset(names);
+		} catch (RuntimeException e) {
+			release(ludo);
+			throw e;
+		}
+		return ludo;
+	}
+
+	/**
+	 * Returns a game to the pool. The game is emptied right away, so that its players and
+	 * listeners are not kept alive by the pool; it must not be used again until acquired.
+	 * @param ludo The game, which must not be in the pool already
+	 * @throws IllegalArgumentException if the game is on another board or has other rules
+	 */
+	public void release(Ludo ludo) {
+		if (ludo.getLayout() != layout || ludo.getRules() != rules) {
+			throw new IllegalArgumentException("The game is on another board or has other rules");
+		}
+		ludo.reset();
+		idle.offer(ludo);
+	}
+
+	/**
+	 * Gets the number of games waiting in the pool.
+	 * @return Number of games
+	 */
+	public int getIdle() {
+		return idle.size();
+	}
+
+	/**
+	 * Gets the number of games built because the pool was empty.
+	 * @return Number of games
+	 */
+	public long getCreated() {
+		return created.sum();
+	}
+
+	/**
+	 * Gets the number of games handed out again.
+	 * @return Number of games
+	 */
+	public long getReused() {
+		return reused.sum();
+	}
+
+	/**
+	 * Compares what building a new Ludo for every game allocates with what a pool does, for
+	 * setting up games alone and for playing them through.
+	 * Usage: LudoPool [games] [seed]
+	 */
+	public static void main(String[] args) {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		LudoPool pool = new LudoPool(16);
+		for (int round=0; round<3; round++) {	// The first rounds warm up
+			for (int play=0; play<2; play++) {
+				for (int pooled=0; pooled<2; pooled++) {
+					long allocated = threads.getThreadAllocatedBytes(thread);
+					long start = System.nanoTime();
+					int sink = 0;
+					for (int g=0; g<games; g++) {
+						Ludo ludo = pooled == 1 ? pool.acquire("Red", "Blue", "Yellow", "Green")
+								: new Ludo("Red", "Blue", "Yellow", "Green");
+						if (play == 1) {
+							LudoDriver driver = new LudoDriver(ludo);
+							for (int n=0; n<100000 && ludo.getWinner() == -1; n++) {
+								int movable = driver.roll(DiceStream.roll(seed, g, n));
+								if (movable != 0) {
+									driver.move(LudoDriver.pick(movable, 0));
+								}
+							}
+						}
+						sink += ludo.getWinner();
+						if (pooled == 1) {
+							pool.release(ludo);
+						}
+					}
+					double nanos = System.nanoTime()-start;
+					allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+					if (round == 2) {
+						System.out.printf("%-6s %-5s %8.0f bytes/game %10.0f ns/game%s%n",
+								pooled == 1 ? "Pooled" : "New", play == 1 ? "play" : "setup",
+								(double) allocated / games, nanos / games, sink == 42 ? " " : "");
+					}
+				}
+			}
+		}
+		System.out.printf("Pool: %d created, %d reused%n", pool.getCreated(), pool.getReused());
+	}
+}
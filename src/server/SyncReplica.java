@@ -0,0 +1,139 @@
+/**
+ * @author Johanne
+ */
+package server;
+
+import java.nio.ByteBuffer;
+
+import logic.BoardLayout;
+
+/**
+ * The client side of GameSync: a copy of a game's pieces and turn state, kept up to date
+ * by applying the snapshot and delta frames GameSync encodes.
+ */
+public class SyncReplica {
+	int version = -1;		// -1 until the first snapshot
+	final int[] position;	// Local position of each piece, indexed player*4 + piece
+	int currentPlayer;
+	int attempt;
+	boolean extraThrow;
+	int winner = -1;
+	int active;				// Active players, one bit per player
+
+	/**
+	 * Creates an empty replica.
+	 * @param layout The board of the game (at most 8 players, and local fields up to 127)
+	 */
+	public SyncReplica(BoardLayout layout) {
+		if (layout.players() > Byte.SIZE) {
+			throw new IllegalArgumentException("Too many players to sync: "+layout.players());
+		}
+		if (layout.goalLocal() > Byte.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many fields to sync: "+layout.goalLocal());
+		}
+		position = new int[layout.players()*4];
+	}
+
+	/**
+	 * Applies a frame. A delta only applies if the replica already has its base version;
+	 * otherwise the client has missed changes and should ask for a snapshot or for
+	 * a delta since getVersion().
+	 * @param frame A frame from GameSync.snapshot() or GameSync.delta()
+	 * @return Whether the frame was applied
+	 */
+	public boolean apply(byte[] frame) {
+		return apply(ByteBuffer.wrap(frame));
+	}
+
+	/**
+	 * Applies a frame held in a buffer, such as one from a Broadcaster. The buffer's position
+	 * is left where it was.
+	 * @param frame A frame from GameSync.snapshot() or GameSync.delta(), from the buffer's position on
+	 * @return Whether the frame was applied
+	 */
+	public boolean apply(ByteBuffer frame) {
+		ByteBuffer in = frame.duplicate();
+		byte type = in.get();
+		int newVersion = in.getInt();
+		int base = in.getInt();
+		if (type == GameSync.DELTA && (version < base || version == -1)) {
+			return false;	// A gap: changes between version and base are missing
+		}
+		if (newVersion <= version && type == GameSync.DELTA) {
+			return true;	// Nothing new
+		}
+		if (in.get() != 0) {	// Turn state
+			int turn = in.getInt();
+			currentPlayer = turn >>> 24;
+			attempt = (byte) (turn >> 16);
+			extraThrow = (turn >> 8 & 1) != 0;
+			winner = (byte) turn;
+			active = in.get() & 0xFF;
+		}
+		for (int n = in.get() & 0xFF; n > 0; n--) {
+			int piece = in.get();
+			position[piece] = in.get();
+		}
+		version = newVersion;
+		return true;
+	}
+
+	/**
+	 * Gets the version the replica is at.
+	 * @return The version, -1 before the first snapshot
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Gets the local position of a piece.
+	 * @param player Whose piece
+	 * @param piece Which piece (0-3)
+	 * @return The local position of the piece
+	 */
+	public int getLocalPosition(int player, int piece) {
+		return position[player*4 + piece];
+	}
+
+	/**
+	 * Gets the player whose turn it is.
+	 * @return The current player
+	 */
+	public int getCurrentPlayer() {
+		return currentPlayer;
+	}
+
+	/**
+	 * Gets the current attempt number.
+	 * @return Current attempt (-1 or 0-2)
+	 */
+	public int getAttempt() {
+		return attempt;
+	}
+
+	/**
+	 * Gets whether the current player has an extra throw.
+	 * @return Whether the current player has an extra throw
+	 */
+	public boolean getExtraThrow() {
+		return extraThrow;
+	}
+
+	/**
+	 * Gets the winner.
+	 * @return The winner, or -1 if the game is not won
+	 */
+	public int getWinner() {
+		return winner;
+	}
+
+	/**
+	 * Gets whether a player is active.
+	 * @param player The player
+	 * @return Whether the player is active
+	 */
+	public boolean isActive(int player) {
+		return (active >> player & 1) != 0;
+	}
+}
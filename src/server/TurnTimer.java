@@ -0,0 +1,312 @@
+/**
+ * @author Johanne
+ */
+package server;
+
+import bot.Strategy;
+import logic.DiceEvent;
+import logic.DiceListener;
+import logic.Ludo;
+import logic.MovesCheckedEvent;
+import logic.PieceEvent;
+import logic.PieceListener;
+import logic.PlayerEvent;
+import logic.PlayerListener;
+
+/**
+ * Turn timeouts for many games at once, on a hashed timing wheel: a ring of slots, each a
+ * linked list of the timers that run out on a tick that hashes to it. Every game gets one
+ * reusable timer node, so arming and cancelling a timer only links or unlinks a node, and
+ * advancing the wheel looks at one slot per tick. Timeouts longer than the wheel go round it
+ * more than once, and are passed over until their last round.
+ *
+ * A game's timer is armed when a player gets the turn (PlayerEvent.PLAYING), armed again when
+ * a move earns an extra throw and cancelled by any other move. When it runs out, the idle
+ * player either loses the turn through Ludo.passTurn(), or has it played by a bot. A game with
+ * fewer than two active players is paused and not timed; it is timed again when Ludo tells the
+ * current player PLAYING on a player joining. A game whose timer throws an exception when it
+ * runs out is closed, and the other timers due on the same tick still run out.
+ *
+ * A TurnTimer is not thread-safe. The games it watches must be played on the thread that
+ * calls advance(), as each of LoadTest's workers plays its own tables.
+ */
+public class TurnTimer {
+	final Timer[] wheel;	// The first timer in each slot
+	final int mask;			// Slots-1
+	final long tickNanos;
+	final long timeoutTicks;
+	final long origin;		// The time of tick 0
+	final Strategy autoPlay;
+	long tick;				// The last tick handled by advance()
+	long present;			// The tick reached by the clock, which timers are armed from
+	int armed;
+	long expired;
+	long failed;
+
+	/**
+	 * Creates a timing wheel that skips idle players.
+	 * @param timeoutNanos Time a player has for a turn
+	 * @param tickNanos Resolution of the wheel; timers run out up to one tick late
+	 * @param slots Number of slots, a power of two
+	 */
+	public TurnTimer(long timeoutNanos, long tickNanos, int slots) {
+		this(timeoutNanos, tickNanos, slots, null);
+	}
+
+	/**
+	 * Creates a timing wheel.
+	 * @param timeoutNanos Time a player has for a turn
+	 * @param tickNanos Resolution of the wheel; timers run out up to one tick late
+	 * @param slots Number of slots, a power of two
+	 * @param autoPlay The bot that plays the turns of idle players, or null to skip them
+	 */
+	public TurnTimer(long timeoutNanos, long tickNanos, int slots, Strategy autoPlay) {
+		if (slots <= 0 || Integer.bitCount(slots) != 1 || tickNanos <= 0 || timeoutNanos <= 0) {
+			throw new IllegalArgumentException("Invalid wheel: "+slots+" slots of "+tickNanos+" ns");
+		}
+		wheel = new Timer[slots];
+		mask = slots-1;
+		this.tickNanos = tickNanos;
+		timeoutTicks = (timeoutNanos + tickNanos-1) / tickNanos;
+		origin = System.nanoTime();
+		this.autoPlay = autoPlay;
+	}
+
+	/**
+	 * Starts watching a game and registers its timer as the game's DiceListener,
+	 * PieceListener and PlayerListener. The current turn is timed from now if the game has
+	 * two active players; otherwise the timer starts on the first turn after that.
+	 * @param ludo The game
+	 * @return The game's timer
+	 */
+	public Timer watch(Ludo ludo) {
+		Timer timer = new Timer(ludo);
+		ludo.addDiceListener(timer);
+		ludo.addPieceListener(timer);
+		ludo.addPlayerListener(timer);
+		if (timer.isTimed()) {
+			present = Math.max(present, (System.nanoTime()-origin) / tickNanos);
+			timer.arm(ludo.getCurrentPlayer());
+		}
+		return timer;
+	}
+
+	/**
+	 * Runs out every timer due up to the given time, playing or skipping the idle players' turns.
+	 * Timers are armed from the time of the last call, so call this about once a tick.
+	 * @param now The current time, from System.nanoTime()
+	 * @return Number of timers that ran out
+	 */
+	public int advance(long now) {
+		int count = 0;
+		present = Math.max(present, (now-origin) / tickNanos);
+		while (tick < present) {
+			tick++;
+			Timer timer = wheel[(int) tick & mask];
+			while (timer != null) {
+				Timer next = timer.next;	// Timers armed by expire() go first in their slot
+				if (timer.deadline <= tick) {
+					unlink(timer);
+					try {
+						timer.expire();
+					} catch (RuntimeException e) {	// The game is broken; the slot's other timers are not
+						timer.close();
+						failed++;
+					}
+					count++;
+				}
+				timer = next;
+			}
+		}
+		expired += count;
+		return count;
+	}
+
+	/**
+	 * Gets the number of timers running.
+	 * @return Number of armed timers
+	 */
+	public int getArmed() {
+		return armed;
+	}
+
+	/**
+	 * Gets the number of timers that have run out.
+	 * @return Number of turns played or skipped for idle players
+	 */
+	public long getExpired() {
+		return expired;
+	}
+
+	/**
+	 * Gets the number of games closed because their timer failed when it ran out.
+	 * @return Number of games
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+	void link(Timer timer) {
+		int slot = (int) timer.deadline & mask;
+		timer.prev = null;
+		timer.next = wheel[slot];
+		if (timer.next != null) {
+			timer.next.prev = timer;
+		}
+		wheel[slot] = timer;
+		timer.linked = true;
+		armed++;
+	}
+
+	void unlink(Timer timer) {
+		if (timer.prev != null) {
+			timer.prev.next = timer.next;
+		} else {
+			wheel[(int) timer.deadline & mask] = timer.next;
+		}
+		if (timer.next != null) {
+			timer.next.prev = timer.prev;
+		}
+		timer.prev = null;
+		timer.next = null;
+		timer.linked = false;
+		armed--;
+	}
+
+	/**
+	 * The timer of one game, also the node linked into the wheel.
+	 */
+	public class Timer implements DiceListener, PieceListener, PlayerListener {
+		final Ludo ludo;
+		Timer prev;
+		Timer next;
+		long deadline;		// The tick the timer runs out on
+		boolean linked;
+		boolean closed;
+		int player;			// The player being timed
+		int dice;			// The player's last throw
+		int movable;		// The pieces the player must choose from, or 0 if the dice is to be thrown
+		int turns;			// Number of times the turn has passed
+
+		Timer(Ludo ludo) {
+			this.ludo = ludo;
+		}
+
+		/**
+		 * Gets whether the game's turns are timed: it is not won and not paused.
+		 */
+		boolean isTimed() {
+			return ludo.getWinner() == -1 && ludo.activePlayers() >= 2;
+		}
+
+		/**
+		 * Starts the timer for a player's turn, or starts it over. A paused game is not timed.
+		 */
+		void arm(int player) {
+			if (linked) {
+				unlink(this);
+			}
+			if (!closed && isTimed()) {
+				this.player = player;
+				deadline = present + timeoutTicks + 1;	// The current tick is partly over
+				link(this);
+			}
+		}
+
+		/**
+		 * Stops the timer.
+		 */
+		public void cancel() {
+			if (linked) {
+				unlink(this);
+			}
+		}
+
+		/**
+		 * Stops the timer for good. The game stays registered, but its events are ignored.
+		 */
+		public void close() {
+			closed = true;
+			cancel();
+		}
+
+		/**
+		 * Gets whether the timer is running.
+		 * @return Whether the timer is armed
+		 */
+		public boolean isArmed() {
+			return linked;
+		}
+
+		@Override
+		public void diceThrown(DiceEvent event) {
+			dice = event.getDice();
+			movable = 0;
+			if (ludo.getAttempt() > -1 && dice == 6) {	// A 6 on an attempt puts out a piece
+				for (int i=0; i<4; i++) {
+					if (ludo.getLocalPosition(event.getPlayer(), i) == 0) {
+						movable |= 1 << i;
+					}
+				}
+			}
+		}
+
+		@Override
+		public void movesChecked(MovesCheckedEvent event) {
+			movable = event.getMovableMask();
+		}
+
+		@Override
+		public void pieceMoved(PieceEvent event) {
+			// Pieces knocked home belong to another player
+			if (event.getPlayer() == ludo.getCurrentPlayer() && event.getNewPos() != 0) {
+				movable = 0;
+				if (ludo.getExtraThrow()) {
+					arm(event.getPlayer());
+				} else {
+					cancel();	// The turn is over; nextPlayer() arms the timer for the next player
+				}
+			}
+		}
+
+		@Override
+		public void playerStateChanged(PlayerEvent event) {
+			if (event.getState() == PlayerEvent.PLAYING) {
+				turns++;
+				movable = 0;
+				arm(event.getPlayer());
+			} else if (event.getState() == PlayerEvent.WON || !isTimed()) {
+				cancel();	// Won, or paused by a player leaving
+			}
+		}
+
+		/**
+		 * Ends the idle player's turn.
+		 */
+		void expire() {
+			if (!isTimed() || ludo.getCurrentPlayer() != player || !ludo.isActive(player)) {
+				return;		// Nobody is waiting for the player
+			}
+			if (autoPlay == null) {
+				ludo.passTurn();
+				return;
+			}
+			// Plays until the turn has passed, like a player who throws and moves in time
+			int player = this.player;	// arm() sets the next player when the turn passes
+			for (int turn = turns; turns == turn && ludo.getWinner() == -1 && !closed; ) {
+				if (movable == 0) {
+					ludo.throwDice(ludo.throwDice());
+				} else {
+					int piece = autoPlay.choosePiece(ludo, dice, movable);
+					int pos = ludo.getLocalPosition(player, piece);
+					movable = 0;
+					if (pos == 0) {		// Pieces at home are put out on the start field
+						ludo.movePiece(player, 0, 1);
+					} else {
+						ludo.movePiece(player, pos, pos+dice);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * @author Johanne
+ */
+package sim;
+
+import logic.BatchEngine;
+import logic.BoardLayout;
+import logic.Ludo;
+import logic.LudoDriver;
+
+/**
+ * Runs a batch of games through the lockstep BatchEngine and reports the throughput.
+ * The first games of the batch are also played on logic.Ludo with the same dice, and the
+ * two are compared after every throw.
+ * Usage: BatchSimulation [games] [seed] [games to validate]
+ */
+public class BatchSimulation {
+	static final int MAX_THROWS = 100000;	// Safety net; a standard game needs a few hundred
+
+	public static void main(String[] args) {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+		int validate = Math.min(games, args.length > 2 ? Integer.parseInt(args[2]) : 100);
+
+		BatchEngine batch = new BatchEngine(BoardLayout.STANDARD, games);
+		LudoDriver[] reference = new LudoDriver[validate];
+		for (int g=0; g<validate; g++) {
+			reference[g] = new LudoDriver(new Ludo("Red", "Blue", "Yellow", "Green"));
+		}
+
+		// Validation pass: both engines in lockstep, compared after every throw
+		int[] dice = new int[games];
+		long mismatches = 0;
+		for (int n=0; n<MAX_THROWS && batch.finished() < games; n++) {
+			fill(dice, seed, batch);
+			batch.step(dice);
+			for (int g=0; g<validate; g++) {
+				Ludo ludo = reference[g].getGame();
+				if (ludo.getWinner() != -1) {
+					continue;
+				}
+				int movable = reference[g].roll(dice[g]);
+				if (movable != 0) {
+					reference[g].move(LudoDriver.pick(movable, 0));
+				}
+				if (!sameState(ludo, batch, g)) {
+					mismatches++;
+					System.out.println("Game "+g+" differs from Ludo after throw "+n);
+				}
+			}
+		}
+		System.out.println("Validated "+validate+" games against Ludo: "+mismatches+" mismatches");
+
+		// Throughput pass: the batch alone
+		batch.reset();
+		long throwsMade = 0;
+		long start = System.nanoTime();
+		for (int n=0; n<MAX_THROWS && batch.finished() < games; n++) {
+			fill(dice, seed, batch);
+			throwsMade += batch.step(dice);
+		}
+		double seconds = (System.nanoTime()-start) / 1e9;
+
+		int[] wins = new int[4];
+		for (int g=0; g<games; g++) {
+			if (batch.getWinner(g) >= 0) {
+				wins[batch.getWinner(g)]++;
+			}
+		}
+		System.out.printf("%d games, %d throws in %.2f s: %.0f games/s, %.0f throws/s%n",
+				games, throwsMade, seconds, games/seconds, throwsMade/seconds);
+		System.out.printf("Wins: RED %d, BLUE %d, YELLOW %d, GREEN %d%n", wins[0], wins[1], wins[2], wins[3]);
+	}
+
+	/**
+	 * Fills in the next dice of every game from the DiceStream.
+	 */
+	static void fill(int[] dice, long seed, BatchEngine batch) {
+		for (int g=0; g<dice.length; g++) {
+			dice[g] = DiceStream.roll(seed, g, batch.getThrows(g));
+		}
+	}
+
+	/**
+	 * Compares a Ludo game with one game of a batch.
+	 * @return Whether pieces, turn, attempt, extra throw and winner are all equal
+	 */
+	static boolean sameState(Ludo ludo, BatchEngine batch, int g) {
+		for (int pl=0; pl<ludo.noOfPlayers(); pl++) {
+			for (int pi=0; pi<4; pi++) {
+				if (ludo.getLocalPosition(pl, pi) != batch.getLocalPosition(g, pl, pi)) {
+					return false;
+				}
+			}
+		}
+		return ludo.getCurrentPlayer() == batch.getCurrentPlayer(g)
+				&& ludo.getAttempt() == batch.getAttempt(g)
+				&& ludo.getExtraThrow() == batch.getExtraThrow(g)
+				&& ludo.getWinner() == batch.getWinner(g);
+	}
+}
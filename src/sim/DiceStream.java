@@ -0,0 +1,37 @@
+/**
+ * @author Johanne
+ */
+package sim;
+
+/**
+ * Reproducible dice for simulations. Each throw is derived from the seed, the game index
+ * and the throw number alone, so a game gets the same dice no matter which engine plays it,
+ * how games are batched or in which order they run.
+ */
+public final class DiceStream {
+	private DiceStream() {
+	}
+	
+	/**
+	 * Gets the dice for the given throw of the given game.
+	 * @param seed The seed of the whole run
+	 * @param game The game index
+	 * @param n The throw number within the game (0 and up)
+	 * @return The dice (1-6)
+	 */
+	public static int roll(long seed, long game, int n) {
+		long x = mix(seed + game*0x9E3779B97F4A7C15L) + n*0xBF58476D1CE4E5B9L;
+		return 1 + (int) (((mix(x) >>> 32) * 6) >>> 32);	// Multiply-shift instead of modulo
+	}
+	
+	/**
+	 * The SplitMix64 finalizer.
+	 * @param z The value to mix
+	 * @return The mixed value
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,376 @@
+/**
+ * @author Johanne
+ */
+package sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import logic.BatchEngine;
+import logic.BoardLayout;
+import logic.Ludo;
+import logic.LudoDriver;
+import logic.Rules;
+
+/**
+ * Plays random games on logic.Ludo and an alternative engine side by side, with the same dice
+ * and choices, and compares the two after every throw: pieces, current player, attempt, extra
+ * throw, winner and the piece chosen. Games run in parallel, each with its dice and choices
+ * taken from the DiceStream by game index, so any failure can be played again on its own.
+ * A game where the engines differ is shrunk to the fewest throws that still make them differ.
+ * Usage: DifferentialFuzzer [games per rule variant] [threads] [seed]
+ */
+public class DifferentialFuzzer {
+	static final int MAX_THROWS = 100000;
+	static final String[] NAMES = {"Red", "Blue", "Yellow", "Green"};
+
+	final Rules rules;
+	final IntFunction<TurnEngine> engine;	// Creates the engine under test for a number of seats
+	final long seed;
+
+	/**
+	 * Creates a fuzzer for an engine playing by the standard rules.
+	 * @param engine Creates a new game on the engine under test, given the number of players (2-4)
+	 * @param seed Seed for the dice and choices
+	 */
+	public DifferentialFuzzer(IntFunction<TurnEngine> engine, long seed) {
+		this(Rules.STANDARD, engine, seed);
+	}
+
+	/**
+	 * Creates a fuzzer for an engine.
+	 * @param rules The rules the engine plays by, and Ludo with it
+	 * @param engine Creates a new game on the engine under test, given the number of players (2-4)
+	 * @param seed Seed for the dice and choices
+	 */
+	public DifferentialFuzzer(Rules rules, IntFunction<TurnEngine> engine, long seed) {
+		this.rules = rules;
+		this.engine = engine;
+		this.seed = seed;
+	}
+
+	/**
+	 * Creates a new game on the reference engine, Ludo played through a LudoDriver.
+	 * @param rules The rules to play by
+	 * @param seats Number of players
+	 * @return The game
+	 */
+	public static TurnEngine reference(Rules rules, int seats) {
+		return new Reference(rules, seats);
+	}
+
+	/**
+	 * Creates a new game on the lockstep BatchEngine, as a batch of one.
+	 * @param rules The rules to play by
+	 * @param seats Number of players
+	 * @return The game
+	 */
+	public static TurnEngine batch(Rules rules, int seats) {
+		return new Batch(rules, seats);
+	}
+
+	/**
+	 * Plays games until one differs or all are played.
+	 * @param games Number of games
+	 * @param threads Threads to play on
+	 * @return The shrunk failing game with the lowest index, or null if the engines agreed
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	public Failure run(long games, int threads) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		AtomicLong next = new AtomicLong();
+		AtomicLong firstFailure = new AtomicLong(Long.MAX_VALUE);
+		List<Future<Failure>> workers = new ArrayList<>();
+		for (int t=0; t<threads; t++) {
+			workers.add(pool.submit(() -> {
+				Failure found = null;
+				int[] dice = new int[1024];
+				int[] ranks = new int[1024];
+				// Games are handed out in chunks; stop after the lowest failing game so far
+				for (long first; (first = next.getAndAdd(64)) < Math.min(games, firstFailure.get()); ) {
+					for (long g=first; g<Math.min(first+64, games); g++) {
+						int seats = 2 + (int) Long.remainderUnsigned(g, 3);
+						TurnEngine expected = reference(rules, seats);
+						TurnEngine actual = engine.apply(seats);
+						for (int n=0; n<MAX_THROWS && expected.getWinner() == -1; n++) {
+							if (n == dice.length) {
+								dice = Arrays.copyOf(dice, n*2);
+								ranks = Arrays.copyOf(ranks, n*2);
+							}
+							dice[n] = DiceStream.roll(seed, g, n);
+							ranks[n] = DiceStream.roll(~seed, g, n) - 1;
+							if (!agree(expected, actual, dice[n], ranks[n], seats)) {
+								firstFailure.accumulateAndGet(g, Math::min);
+								if (found == null || g < found.game) {
+									found = new Failure(g, seats, Arrays.copyOf(dice, n+1), Arrays.copyOf(ranks, n+1));
+								}
+								break;
+							}
+						}
+					}
+				}
+				return found;
+			}));
+		}
+		Failure failure = null;
+		try {
+			for (Future<Failure> worker : workers) {
+				Failure found = worker.get();
+				if (found != null && (failure == null || found.game < failure.game)) {
+					failure = found;
+				}
+			}
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		if (failure != null) {
+			failure.shrink(this);
+		}
+		return failure;
+	}
+
+	/**
+	 * Plays one throw on both engines and compares them.
+	 * @return Whether the engines agree after the throw
+	 */
+	static boolean agree(TurnEngine expected, TurnEngine actual, int dice, int rank, int seats) {
+		return expected.turn(dice, rank) == actual.turn(dice, rank) && sameState(expected, actual, seats);
+	}
+
+	/**
+	 * Compares the state of two engines.
+	 */
+	static boolean sameState(TurnEngine a, TurnEngine b, int seats) {
+		for (int pl=0; pl<seats; pl++) {
+			for (int pi=0; pi<4; pi++) {
+				if (a.getLocalPosition(pl, pi) != b.getLocalPosition(pl, pi)) {
+					return false;
+				}
+			}
+		}
+		return a.getCurrentPlayer() == b.getCurrentPlayer() && a.getAttempt() == b.getAttempt()
+				&& a.getExtraThrow() == b.getExtraThrow() && a.getWinner() == b.getWinner();
+	}
+
+	/**
+	 * Plays a list of throws on fresh games of both engines.
+	 * @return The number of throws until the engines differ, or -1 if they agree throughout
+	 */
+	int diverges(int seats, int[] dice, int[] ranks) {
+		TurnEngine expected = reference(rules, seats);
+		TurnEngine actual = engine.apply(seats);
+		for (int n=0; n<dice.length && expected.getWinner() == -1; n++) {
+			if (!agree(expected, actual, dice[n], ranks[n], seats)) {
+				return n+1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Ludo, played the way the GUI plays it.
+	 */
+	static class Reference implements TurnEngine {
+		final LudoDriver driver;
+		final Ludo ludo;
+
+		Reference(Rules rules, int seats) {
+			driver = new LudoDriver(new Ludo(BoardLayout.STANDARD, rules, Arrays.copyOf(NAMES, seats)));
+			ludo = driver.getGame();
+		}
+
+		@Override
+		public int turn(int dice, int rank) {
+			int movable = driver.roll(dice);
+			if (movable == 0) {
+				return -1;
+			}
+			int piece = LudoDriver.pick(movable, rank);
+			driver.move(piece);
+			return piece;
+		}
+
+		@Override
+		public int getLocalPosition(int player, int piece) {
+			return ludo.getLocalPosition(player, piece);
+		}
+
+		@Override
+		public int getCurrentPlayer() {
+			return ludo.getCurrentPlayer();
+		}
+
+		@Override
+		public int getAttempt() {
+			return ludo.getAttempt();
+		}
+
+		@Override
+		public boolean getExtraThrow() {
+			return ludo.getExtraThrow();
+		}
+
+		@Override
+		public int getWinner() {
+			return ludo.getWinner();
+		}
+	}
+
+	/**
+	 * A BatchEngine holding a single game.
+	 */
+	static class Batch implements TurnEngine {
+		final BatchEngine batch;
+
+		Batch(Rules rules, int seats) {
+			batch = new BatchEngine(BoardLayout.STANDARD, rules, 1, seats);
+		}
+
+		@Override
+		public int turn(int dice, int rank) {
+			return batch.turn(0, dice, rank);
+		}
+
+		@Override
+		public int getLocalPosition(int player, int piece) {
+			return batch.getLocalPosition(0, player, piece);
+		}
+
+		@Override
+		public int getCurrentPlayer() {
+			return batch.getCurrentPlayer(0);
+		}
+
+		@Override
+		public int getAttempt() {
+			return batch.getAttempt(0);
+		}
+
+		@Override
+		public boolean getExtraThrow() {
+			return batch.getExtraThrow(0);
+		}
+
+		@Override
+		public int getWinner() {
+			return batch.getWinner(0);
+		}
+	}
+
+	/**
+	 * A game on which the engines differ.
+	 */
+	public static class Failure {
+		final long game;	// Index of the game in the DiceStream
+		final int seats;
+		int[] dice;
+		int[] ranks;
+
+		Failure(long game, int seats, int[] dice, int[] ranks) {
+			this.game = game;
+			this.seats = seats;
+			this.dice = dice;
+			this.ranks = ranks;
+		}
+
+		/**
+		 * Makes the game as short as possible while the engines still differ on it: removes
+		 * runs of throws, halving the run length down to single throws, then sets every choice
+		 * to the lowest movable piece where that keeps the difference.
+		 */
+		void shrink(DifferentialFuzzer fuzzer) {
+			for (int run = Math.max(1, dice.length/2); run >= 1; run /= 2) {
+				for (int start = 0; start+run <= dice.length && dice.length > 1; ) {
+					int[] d = remove(dice, start, run);
+					int[] r = remove(ranks, start, run);
+					int length = fuzzer.diverges(seats, d, r);
+					if (length != -1) {
+						dice = Arrays.copyOf(d, length);	// Nothing after the difference matters
+						ranks = Arrays.copyOf(r, length);
+					} else {
+						start += run;
+					}
+				}
+			}
+			for (int n=0; n<ranks.length; n++) {
+				int rank = ranks[n];
+				ranks[n] = 0;
+				if (fuzzer.diverges(seats, dice, ranks) == -1) {
+					ranks[n] = rank;
+				}
+			}
+		}
+
+		static int[] remove(int[] a, int start, int length) {
+			int[] b = new int[a.length-length];
+			System.arraycopy(a, 0, b, 0, start);
+			System.arraycopy(a, start+length, b, start, b.length-start);
+			return b;
+		}
+
+		/**
+		 * Gets the index of the game that failed first.
+		 * @return The game index
+		 */
+		public long getGame() {
+			return game;
+		}
+
+		/**
+		 * Gets the throws of the shrunk game.
+		 * @return The dice of each throw
+		 */
+		public int[] getDice() {
+			return dice.clone();
+		}
+
+		/**
+		 * Gets the choices of the shrunk game.
+		 * @return The rank of the piece chosen after each throw
+		 */
+		public int[] getRanks() {
+			return ranks.clone();
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder("Game ").append(game).append(", ").append(seats)
+					.append(" players, differs after ").append(dice.length).append(" throws (dice/rank):");
+			for (int n=0; n<dice.length; n++) {
+				sb.append(' ').append(dice[n]).append('/').append(ranks[n]);
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Checks BatchEngine against Ludo, with every combination of house rules.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		long games = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+		for (int variant=0; variant<16; variant++) {	// Variant 0b0011 is the standard game
+			Rules rules = new Rules((variant & 8) != 0, (variant & 4) != 0, (variant & 2) != 0, (variant & 1) != 0);
+			long start = System.nanoTime();
+			Failure failure = new DifferentialFuzzer(rules, seats -> batch(rules, seats), seed).run(games, threads);
+			double seconds = (System.nanoTime()-start) / 1e9;
+			if (failure == null) {
+				System.out.printf("%s: BatchEngine agrees with Ludo on %d games (%.1f s, %.0f games/s)%n",
+						rules, games, seconds, games/seconds);
+			} else {
+				System.out.println(rules+": BatchEngine differs from Ludo. "+failure);
+			}
+		}
+	}
+}
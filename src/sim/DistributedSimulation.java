@@ -0,0 +1,213 @@
+/**
+ * @author Johanne
+ */
+package sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import logic.BatchEngine;
+import logic.BoardLayout;
+
+/**
+ * Plays a run of games on several worker JVMs on this machine, so that no single heap or
+ * garbage collector holds the whole run. The coordinator starts the workers with this class's
+ * class path and hands out chunks of game indices over loopback sockets, one chunk at a time to
+ * whichever worker is free. Each worker plays its chunks on a BatchEngine and sends back a
+ * Summary of each, and the coordinator adds them up. Every game's dice and choices come from
+ * the DiceStream by game index, and summaries add up in any order, so the totals are the same
+ * for any number of workers and chunk size.
+ *
+ * The workers' JVM options, such as -Xmx512m, are taken from the system property
+ * ludo.workerOptions, separated by spaces.
+ * Usage: DistributedSimulation [games] [workers, 0 to play in this JVM] [seed] [games per chunk]
+ */
+public class DistributedSimulation {
+	static final int MAX_THROWS = 100000;
+	static final String WORKER = "--worker";
+	static final int CONNECT_TIMEOUT = 60000;	// Milliseconds for the workers to start and connect
+
+	final long games;
+	final int workers;
+	final long seed;
+	final int chunk;
+
+	/**
+	 * Creates a run.
+	 * @param games Number of games
+	 * @param workers Worker JVMs to start, or 0 to play in this JVM
+	 * @param seed Seed for the DiceStream
+	 * @param chunk Games handed to a worker at a time
+	 */
+	public DistributedSimulation(long games, int workers, long seed, int chunk) {
+		if (chunk < 1 || workers < 0) {
+			throw new IllegalArgumentException("Invalid run: "+workers+" workers, chunks of "+chunk);
+		}
+		this.games = games;
+		this.workers = workers;
+		this.seed = seed;
+		this.chunk = chunk;
+	}
+
+	/**
+	 * Plays the run.
+	 * @return The summary of all games
+	 * @throws IOException if a worker cannot be started or fails
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	public Summary run() throws IOException, InterruptedException {
+		Summary total = new Summary();
+		if (workers == 0) {
+			for (long from=0; from<games; from+=chunk) {
+				total.add(play(seed, from, Math.min(from+chunk, games)));
+			}
+			return total;
+		}
+		List<Process> processes = new ArrayList<>();
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		try (ServerSocket server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress())) {
+			server.setSoTimeout(CONNECT_TIMEOUT);
+			for (int w=0; w<workers; w++) {
+				processes.add(command(server.getLocalPort()).inheritIO().start());
+			}
+			AtomicLong next = new AtomicLong();		// The first game of the next chunk
+			List<Future<Summary>> parts = new ArrayList<>();
+			for (int w=0; w<workers; w++) {
+				Socket socket = server.accept();
+				parts.add(pool.submit((Callable<Summary>) () -> coordinate(socket, next)));
+			}
+			for (Future<Summary> part : parts) {
+				total.add(part.get());
+			}
+			for (Process process : processes) {
+				process.waitFor(CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+		} catch (ExecutionException e) {
+			throw new IOException("A worker failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+			for (Process process : processes) {
+				process.destroy();
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Builds the command that starts a worker.
+	 */
+	ProcessBuilder command(int port) {
+		List<String> command = new ArrayList<>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		for (String option : System.getProperty("ludo.workerOptions", "").trim().split("\\s+")) {
+			if (!option.isEmpty()) {
+				command.add(option);
+			}
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(DistributedSimulation.class.getName());
+		command.add(WORKER);
+		command.add(Integer.toString(port));
+		return new ProcessBuilder(command);
+	}
+
+	/**
+	 * Feeds one worker chunks until the run is handed out, then tells it to stop.
+	 * @return The summary of the worker's chunks
+	 */
+	Summary coordinate(Socket socket, AtomicLong next) throws IOException {
+		Summary summary = new Summary();
+		try (Socket s = socket;
+				DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+			for (long from; (from = next.getAndAdd(chunk)) < games; ) {
+				out.writeLong(seed);
+				out.writeLong(from);
+				out.writeLong(Math.min(from+chunk, games));
+				out.flush();
+				summary.add(Summary.read(in));
+			}
+			out.writeLong(seed);
+			out.writeLong(-1);		// No more games
+			out.writeLong(-1);
+			out.flush();
+		}
+		return summary;
+	}
+
+	/**
+	 * Runs a worker: plays the chunks the coordinator sends until it sends none.
+	 * @param port The coordinator's port on the loopback address
+	 * @throws IOException if the connection fails
+	 */
+	static void work(int port) throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+			while (true) {
+				long seed = in.readLong();
+				long from = in.readLong();
+				long to = in.readLong();
+				if (from < 0) {
+					return;
+				}
+				play(seed, from, to).write(out);
+				out.flush();
+			}
+		}
+	}
+
+	/**
+	 * Plays a chunk of games. A player with a choice moves a piece picked by the DiceStream.
+	 * @param seed Seed for the DiceStream
+	 * @param from The first game index
+	 * @param to The game index after the last
+	 * @return The summary of the games
+	 */
+	static Summary play(long seed, long from, long to) {
+		Summary summary = new Summary();
+		BatchEngine batch = new BatchEngine(BoardLayout.STANDARD, (int) (to-from));
+		for (int g=0; g<batch.games(); g++) {
+			long game = from+g;
+			for (int n=0; n<MAX_THROWS && batch.getWinner(g) < 0; n++) {
+				batch.turn(g, DiceStream.roll(seed, game, n), DiceStream.roll(~seed, game, n));
+			}
+			summary.add(batch.getWinner(g), batch.getThrows(g));
+		}
+		return summary;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length == 2 && args[0].equals(WORKER)) {
+			work(Integer.parseInt(args[1]));
+			return;
+		}
+		long games = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+		int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+		int chunk = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+
+		long start = System.nanoTime();
+		Summary summary = new DistributedSimulation(games, workers, seed, chunk).run();
+		double seconds = (System.nanoTime()-start) / 1e9;
+		System.out.println(summary);
+		System.out.printf("%d workers in %.2f s: %.0f games/s%n", workers, seconds, games/seconds);
+	}
+}
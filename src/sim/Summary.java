@@ -0,0 +1,181 @@
+/**
+ * @author Johanne
+ */
+package sim;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The results of a run of games on the standard board: wins by color, unfinished games and
+ * the lengths of the games in throws. Summaries of parts of a run add up to the summary of the
+ * whole run, in any order, as every total is a count, a sum, a minimum or a maximum. Not
+ * thread-safe: give each thread its own summary and add() them together afterwards.
+ */
+public class Summary {
+	static final int BUCKET = 50;		// Throws per bucket of game lengths
+	static final int BUCKETS = 40;		// The last bucket holds every longer game
+
+	long games;
+	long throwsMade;
+	long unfinished;
+	final long[] wins = new long[4];
+	final long[] lengths = new long[BUCKETS];
+	int shortest = Integer.MAX_VALUE;
+	int longest;
+
+	/**
+	 * Counts one game.
+	 * @param winner The winning color, or -1 if the game was not finished
+	 * @param throwsMade Number of throws in the game
+	 */
+	public void add(int winner, int throwsMade) {
+		games++;
+		this.throwsMade += throwsMade;
+		if (winner < 0) {
+			unfinished++;
+		} else {
+			wins[winner]++;
+		}
+		lengths[Math.min(throwsMade / BUCKET, BUCKETS-1)]++;
+		shortest = Math.min(shortest, throwsMade);
+		longest = Math.max(longest, throwsMade);
+	}
+
+	/**
+	 * Adds the games of another summary to this one.
+	 * @param other The summary to add
+	 */
+	public void add(Summary other) {
+		games += other.games;
+		throwsMade += other.throwsMade;
+		unfinished += other.unfinished;
+		for (int i=0; i<wins.length; i++) {
+			wins[i] += other.wins[i];
+		}
+		for (int i=0; i<lengths.length; i++) {
+			lengths[i] += other.lengths[i];
+		}
+		shortest = Math.min(shortest, other.shortest);
+		longest = Math.max(longest, other.longest);
+	}
+
+	/**
+	 * Writes the summary, to be read back with read().
+	 * @param out Where to write
+	 * @throws IOException if writing fails
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeLong(games);
+		out.writeLong(throwsMade);
+		out.writeLong(unfinished);
+		for (long count : wins) {
+			out.writeLong(count);
+		}
+		for (long count : lengths) {
+			out.writeLong(count);
+		}
+		out.writeInt(shortest);
+		out.writeInt(longest);
+	}
+
+	/**
+	 * Reads a summary written by write().
+	 * @param in Where to read from
+	 * @return The summary
+	 * @throws IOException if reading fails
+	 */
+	public static Summary read(DataInput in) throws IOException {
+		Summary summary = new Summary();
+		summary.games = in.readLong();
+		summary.throwsMade = in.readLong();
+		summary.unfinished = in.readLong();
+		for (int i=0; i<summary.wins.length; i++) {
+			summary.wins[i] = in.readLong();
+		}
+		for (int i=0; i<summary.lengths.length; i++) {
+			summary.lengths[i] = in.readLong();
+		}
+		summary.shortest = in.readInt();
+		summary.longest = in.readInt();
+		return summary;
+	}
+
+	/**
+	 * Gets the number of games counted.
+	 * @return Number of games
+	 */
+	public long getGames() {
+		return games;
+	}
+
+	/**
+	 * Gets the number of throws in all games.
+	 * @return Number of throws
+	 */
+	public long getThrows() {
+		return throwsMade;
+	}
+
+	/**
+	 * Gets the number of games a color won.
+	 * @param player The color (RED, BLUE, YELLOW, GREEN)
+	 * @return Number of games
+	 */
+	public long getWins(int player) {
+		return wins[player];
+	}
+
+	/**
+	 * Gets the number of games stopped without a winner.
+	 * @return Number of games
+	 */
+	public long getUnfinished() {
+		return unfinished;
+	}
+
+	/**
+	 * Gets the length of a game in throws that the given share of games were no longer than,
+	 * to the nearest bucket of 50 throws above it.
+	 * @param percentile The percentile (0-100)
+	 * @return Number of throws
+	 */
+	public int getLengthPercentile(double percentile) {
+		long rank = (long) Math.ceil(games * percentile / 100);
+		long seen = 0;
+		for (int i=0; i<BUCKETS-1; i++) {
+			seen += lengths[i];
+			if (seen >= rank) {
+				return Math.min((i+1) * BUCKET, longest);
+			}
+		}
+		return longest;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Summary)) {
+			return false;
+		}
+		Summary other = (Summary) o;
+		return games == other.games && throwsMade == other.throwsMade && unfinished == other.unfinished
+				&& Arrays.equals(wins, other.wins) && Arrays.equals(lengths, other.lengths)
+				&& shortest == other.shortest && longest == other.longest;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(games*31 + throwsMade) ^ Arrays.hashCode(wins) ^ Arrays.hashCode(lengths);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d games, %d throws (%.1f per game, %d to %d, median %d, p99 %d)%n"
+				+ "Wins: RED %d, BLUE %d, YELLOW %d, GREEN %d, unfinished %d",
+				games, throwsMade, games == 0 ? 0 : (double) throwsMade / games,
+				games == 0 ? 0 : shortest, longest, getLengthPercentile(50), getLengthPercentile(99),
+				wins[0], wins[1], wins[2], wins[3], unfinished);
+	}
+}
@@ -0,0 +1,213 @@
+/**
+ * @author Johanne
+ */
+package sim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import bot.FirstPiece;
+import bot.RandomPiece;
+import bot.Strategy;
+import logic.Ludo;
+import logic.LudoDriver;
+
+/**
+ * Plays two strategies against each other until a sequential probability ratio test (SPRT)
+ * can tell which is stronger. Each round plays every way of seating two copies of each
+ * strategy on RED, BLUE, YELLOW and GREEN, all with the same dice, and rounds are played in
+ * parallel. The test decides between "A wins with probability 0.5+delta" and "A wins with
+ * probability 0.5-delta" and stops as soon as either is accepted, so a clear difference
+ * is found after a few hundred games instead of a fixed, huge number.
+ */
+public class Tournament {
+	/**
+	 * The seatings of one round: which strategy, A (0) or B (1), plays each color.
+	 */
+	static final int[][] SEATINGS = {
+			{0, 0, 1, 1}, {0, 1, 0, 1}, {0, 1, 1, 0}, {1, 0, 0, 1}, {1, 0, 1, 0}, {1, 1, 0, 0}
+		};
+	static final int MAX_THROWS = 100000;
+
+	enum Decision {A_STRONGER, B_STRONGER, UNDECIDED}
+
+	final Strategy[] strategies;
+	final double win;		// Log-likelihood ratio added when A wins, subtracted when B wins
+	final double upper;		// Accept "A is stronger" at or above this
+	final double lower;		// Accept "B is stronger" at or below this
+	final int maxRounds;
+	final int threads;
+	final long seed;
+
+	/**
+	 * Creates a tournament between two strategies.
+	 * @param a Strategy A
+	 * @param b Strategy B
+	 * @param delta Smallest difference in win rate from 0.5 worth detecting (0-0.5)
+	 * @param alpha Probability of wrongly declaring A stronger
+	 * @param beta Probability of wrongly declaring B stronger
+	 * @param maxRounds Rounds to play before giving up undecided
+	 * @param threads Threads to play rounds on
+	 * @param seed Seed for the DiceStream
+	 */
+	public Tournament(Strategy a, Strategy b, double delta, double alpha, double beta,
+			int maxRounds, int threads, long seed) {
+		if (delta <= 0 || delta >= 0.5) {
+			throw new IllegalArgumentException("delta must be between 0 and 0.5: "+delta);
+		}
+		strategies = new Strategy[] {a, b};
+		win = Math.log((0.5+delta) / (0.5-delta));
+		upper = Math.log((1-beta) / alpha);
+		lower = Math.log(beta / (1-alpha));
+		this.maxRounds = maxRounds;
+		this.threads = threads;
+		this.seed = seed;
+	}
+
+	/**
+	 * Plays rounds until the test reaches a decision or maxRounds is reached. Rounds are
+	 * played in parallel, but results are counted in round order, so the outcome does
+	 * not depend on the number of threads.
+	 * @return The result
+	 * @throws InterruptedException if interrupted while waiting for rounds
+	 */
+	public Result run() throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		Result result = new Result();
+		try {
+			int wave = threads*4;	// Rounds in flight at a time
+			for (int first=0; first<maxRounds && result.decision == Decision.UNDECIDED; first+=wave) {
+				List<Future<int[]>> rounds = new ArrayList<>();
+				for (int r=first; r<Math.min(first+wave, maxRounds); r++) {
+					final int round = r;
+					rounds.add(pool.submit((Callable<int[]>) () -> playRound(round)));
+				}
+				for (Future<int[]> round : rounds) {
+					int[] winners = round.get();
+					for (int s=0; s<SEATINGS.length && result.decision == Decision.UNDECIDED; s++) {
+						result.add(winners[s] < 0 ? -1 : SEATINGS[s][winners[s]], this);
+					}
+				}
+			}
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		return result;
+	}
+
+	/**
+	 * Plays one game for every seating, all with the dice of this round.
+	 * @param round The round number
+	 * @return The winning color of each seating, -1 if a game was not finished
+	 */
+	int[] playRound(int round) {
+		int[] winners = new int[SEATINGS.length];
+		for (int s=0; s<SEATINGS.length; s++) {
+			LudoDriver driver = new LudoDriver(new Ludo("A", "B", "C", "D"));
+			Ludo ludo = driver.getGame();
+			for (int n=0; n<MAX_THROWS && ludo.getWinner() == -1; n++) {
+				int dice = DiceStream.roll(seed, round, n);
+				int movable = driver.roll(dice);
+				if (movable != 0) {
+					Strategy strategy = strategies[SEATINGS[s][ludo.getCurrentPlayer()]];
+					driver.move(strategy.choosePiece(ludo, dice, movable));
+				}
+			}
+			winners[s] = ludo.getWinner();
+		}
+		return winners;
+	}
+
+	/**
+	 * The running score and outcome of a tournament.
+	 */
+	public static class Result {
+		int games;
+		int winsA;
+		int winsB;
+		double llr;		// Log-likelihood ratio of "A is stronger" over "B is stronger"
+		Decision decision = Decision.UNDECIDED;
+
+		/**
+		 * Counts one game and checks the test bounds.
+		 * @param winner The winning strategy, A (0) or B (1), or -1 if there was none
+		 */
+		void add(int winner, Tournament t) {
+			games++;
+			if (winner == 0) {
+				winsA++;
+				llr += t.win;
+			} else if (winner == 1) {
+				winsB++;
+				llr -= t.win;
+			}
+			if (llr >= t.upper) {
+				decision = Decision.A_STRONGER;
+			} else if (llr <= t.lower) {
+				decision = Decision.B_STRONGER;
+			}
+		}
+
+		/**
+		 * Gets the decision reached.
+		 * @return "A_STRONGER", "B_STRONGER" or "UNDECIDED"
+		 */
+		public String getDecision() {
+			return decision.name();
+		}
+
+		/**
+		 * Gets the number of games counted.
+		 * @return Number of games
+		 */
+		public int getGames() {
+			return games;
+		}
+
+		/**
+		 * Gets the number of games won by strategy A.
+		 * @return Number of wins
+		 */
+		public int getWinsA() {
+			return winsA;
+		}
+
+		/**
+		 * Gets the number of games won by strategy B.
+		 * @return Number of wins
+		 */
+		public int getWinsB() {
+			return winsB;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s after %d games: A won %d, B won %d (LLR %.2f)",
+					decision, games, winsA, winsB, llr);
+		}
+	}
+
+	/**
+	 * Compares FirstPiece (A) against RandomPiece (B).
+	 * Usage: Tournament [delta] [alpha] [beta] [max rounds] [threads]
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		double delta = args.length > 0 ? Double.parseDouble(args[0]) : 0.05;
+		double alpha = args.length > 1 ? Double.parseDouble(args[1]) : 0.01;
+		double beta = args.length > 2 ? Double.parseDouble(args[2]) : 0.01;
+		int maxRounds = args.length > 3 ? Integer.parseInt(args[3]) : 100000;
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+		long start = System.nanoTime();
+		Result result = new Tournament(new FirstPiece(), new RandomPiece(), delta, alpha, beta,
+				maxRounds, threads, 1).run();
+		System.out.printf("%s in %.1f s%n", result, (System.nanoTime()-start) / 1e9);
+	}
+}
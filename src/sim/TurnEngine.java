@@ -0,0 +1,51 @@
+/**
+ * @author Johanne
+ */
+package sim;
+
+/**
+ * A Ludo engine that DifferentialFuzzer can check against logic.Ludo. It plays one game,
+ * one throw at a time, with every seat from RED up taken, and the player's choice given as
+ * a rank among the movable pieces, as for LudoDriver.pick().
+ */
+public interface TurnEngine {
+	/**
+	 * Throws the dice for the current player and moves the chosen piece, if there is a choice.
+	 * @param dice The dice (1-6)
+	 * @param rank Which movable piece to move
+	 * @return The piece chosen, or -1 if there was nothing to choose
+	 */
+	int turn(int dice, int rank);
+
+	/**
+	 * Gets the local position of the given piece.
+	 * @param player Whose piece
+	 * @param piece Which piece (0-3)
+	 * @return The local position of the piece
+	 */
+	int getLocalPosition(int player, int piece);
+
+	/**
+	 * Gets the player whose turn it currently is.
+	 * @return The current player
+	 */
+	int getCurrentPlayer();
+
+	/**
+	 * Gets the attempt number.
+	 * @return -1 for in-game turns, 0-2 during the three attempts to roll 6
+	 */
+	int getAttempt();
+
+	/**
+	 * Gets whether the current player has an extra throw.
+	 * @return Whether the current player has an extra throw
+	 */
+	boolean getExtraThrow();
+
+	/**
+	 * Gets the winner.
+	 * @return The winner, or -1 while the game is running
+	 */
+	int getWinner();
+}